@@ -0,0 +1,111 @@
+package agentcore;
+
+import java.util.Arrays;
+
+/**
+ * Auxiliary class that is a data container for a sequence of actions that is submitted to the environment at once:
+ * moves, optionally followed by grabbing or dropping gold. The environment performs the moves in order and stops at the
+ * first one that fails, or after a move that enters a cell where the agent wants to perceive. If the batch has a
+ * percept container, then the environment fills it in such a cell, so the agent needs no separate perceive action. The
+ * gripper action is only performed if all moves succeeded. Afterwards the batch holds the outcomes.
+ *
+ * @author Bas Testerink
+ */
+public class ActionBatch {
+	public static final int NONE = 0, GRAB = 1, DROP = 2;			// Gripper actions
+	public static final int COMPLETED = 0, FAILED = 1, PERCEPT = 2;	// Reasons why a batch stopped
+	private int[] moves = new int[16];								// Directions of the moves
+	private boolean[] perceive = new boolean[16];					// Per move whether the batch stops after it
+	private int moveAmount = 0;										// Number of used entries in moves
+	private int gripper = NONE;										// Gripper action after the moves
+	private int performed = 0;										// Moves that succeeded
+	private boolean gripped = false;								// Whether the gripper action succeeded
+	private int stopReason = COMPLETED;
+	private String failure = null;									// Why the last action failed, if it did
+	private Percept percept = null;									// Container for what is perceived, if set
+	private boolean perceived = false;								// Whether the container was filled
+
+	/** Remove the actions and outcomes, so that the batch can be reused. */
+	public void clear() {
+		moveAmount = 0;
+		gripper = NONE;
+		clearOutcomes();
+	}
+	public void clearOutcomes() {
+		performed = 0;
+		gripped = false;
+		stopReason = COMPLETED;
+		failure = null;
+		perceived = false;
+	}
+	/**
+	 * Add a move.
+	 * @param direction One of the directions of WumpusConstants.
+	 * @param perceive Whether the batch stops after this move, because the agent will perceive new things there.
+	 */
+	public void addMove(int direction, boolean perceive) {
+		if(moveAmount == moves.length){
+			moves = Arrays.copyOf(moves, moveAmount*2);
+			this.perceive = Arrays.copyOf(this.perceive, moveAmount*2);
+		}
+		moves[moveAmount] = direction;
+		this.perceive[moveAmount++] = perceive;
+	}
+	public int getMoveAmount() {
+		return moveAmount;
+	}
+	public int getMove(int i) {
+		return moves[i];
+	}
+	public boolean isPerceivedAfter(int i) {
+		return perceive[i];
+	}
+	public int getGripper() {
+		return gripper;
+	}
+	public void setGripper(int gripper) {
+		this.gripper = gripper;
+	}
+	/** Register that the next move succeeded. */
+	public void moved() {
+		performed++;
+	}
+	public int getPerformed() {
+		return performed;
+	}
+	public boolean isGripped() {
+		return gripped;
+	}
+	public void setGripped(boolean gripped) {
+		this.gripped = gripped;
+	}
+	/** Register why the batch stopped. */
+	public void stop(int reason, String failure) {
+		this.stopReason = reason;
+		this.failure = failure;
+	}
+	public int getStopReason() {
+		return stopReason;
+	}
+	public String getFailure() {
+		return failure;
+	}
+	public Percept getPercept() {
+		return percept;
+	}
+	/** Set the container that is filled after a move into a cell where the agent wants to perceive. */
+	public void setPercept(Percept percept) {
+		this.percept = percept;
+	}
+	/** Whether the percept container holds what the agent perceived after its last move. */
+	public boolean isPerceived() {
+		return perceived;
+	}
+	public void setPerceived(boolean perceived) {
+		this.perceived = perceived;
+	}
+	/** Whether all actions were performed. */
+	public boolean isCompleted() {
+		return stopReason == COMPLETED;
+	}
+}
@@ -0,0 +1,14 @@
+package agentcore;
+/**
+ * Thrown from the deliberation cycle of an agent whose agent class has been halted. The actor thread that serves the 
+ * agent ends with it. Owners of the actor threads (e.g. an episode of the batch runner) are expected to catch it.
+ * 
+ * @author Bas Testerink
+ */
+public class AgentHaltedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public AgentHaltedException(int agent){
+		super("Agent "+agent+" is halted.");
+	}
+}
@@ -0,0 +1,141 @@
+package agentcore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+/**
+ * The believed world of an agent as bit planes: one bit per cell for each kind of belief. A column of the world (fixed x)
+ * is padded to whole words of 64 cells, so bit y of column x is bit y%64 of word x*words+y/64. Neighbors in the
+ * y-direction are then one bit shift away and neighbors in the x-direction are at the same bit of the previous or next
+ * column. This allows rules about neighbors to be applied to 64 cells at once.
+ *
+ * Positions that are returned by {@link #next(int, int)} are bit positions (x*words*64+y), which can be converted back
+ * with {@link #getX(int)} and {@link #getY(int)}.
+ *
+ * @author Bas Testerink
+ */
+public class BeliefPlanes {
+	public static final int VISITED = 0, BREEZE = 1, STENCH = 2, PIT = 3, WUMPUS = 4, GOLD = 5, CHEST = 6,
+			CAN_HAVE_PIT = 7, CAN_HAVE_WUMPUS = 8, SAFE = 9;
+	private static final int PLANES = 10;
+	private int width, height, words;							// Dimensions of the world, words per column
+	private long lastMask;										// Bits of the last word of a column that are inside the world
+	private long[][] planes;									// The planes, indexed by the constants above
+	private Map<Integer,Integer> agents = new HashMap<Integer,Integer>(); // Other agents seen per cell (x*height+y), only if there were any
+
+	public BeliefPlanes(int width, int height){
+		this.width = width;
+		this.height = height;
+		words = (height+63)>>>6;
+		lastMask = (height&63) == 0 ? -1L : (1L<<(height&63))-1;
+		planes = new long[PLANES][width*words];
+		for(int i = 0; i < width*words; i++){						// Everything is possible at the start
+			long mask = i%words == words-1 ? lastMask : -1L;
+			planes[CAN_HAVE_PIT][i] = mask;
+			planes[CAN_HAVE_WUMPUS][i] = mask;
+		}
+	}
+
+	public boolean get(int plane, int x, int y){ return (planes[plane][x*words+(y>>>6)] & (1L<<y)) != 0; }
+	/** All beliefs about a cell, bit p is set if the cell is set in plane p. */
+	public int getAll(int x, int y){
+		int r = 0;
+		for(int plane = 0; plane < PLANES; plane++)
+			if(get(plane, x, y)) r |= 1<<plane;
+		return r;
+	}
+	public void set(int plane, int x, int y, boolean b){
+		if(b) planes[plane][x*words+(y>>>6)] |= 1L<<y;
+		else planes[plane][x*words+(y>>>6)] &= ~(1L<<y);
+	}
+
+	/**
+	 * Apply the rule "a visited cell without a percept has no danger next to it" to one word, for instance a visited
+	 * cell without a breeze has no pit next to it.
+	 * @param percept The plane of the percept (breeze or stench).
+	 * @param danger The plane of the possible danger (can have pit or can have wumpus).
+	 * @param x Column of the word.
+	 * @param w Index of the word in the column.
+	 * @return The cells of the word for which the danger is ruled out by this, as bits.
+	 */
+	public long ruleOutNextTo(int percept, int danger, int x, int w){
+		long[] v = planes[VISITED], p = planes[percept];
+		int i = x*words+w;
+		long own = v[i] & ~p[i];
+		long next = own<<1 | own>>>1;												// Neighbors in the same word
+		if(w > 0) next |= (v[i-1] & ~p[i-1]) >>> 63;								// Last cell of the previous word
+		if(w < words-1) next |= (v[i+1] & ~p[i+1]) << 63;							// First cell of the next word
+		if(x > 0) next |= v[i-words] & ~p[i-words];									// Previous column
+		if(x < width-1) next |= v[i+words] & ~p[i+words];							// Next column
+		long[] d = planes[danger];
+		long ruledOut = d[i] & next;
+		d[i] &= ~next;
+		return ruledOut;
+	}
+
+	/**
+	 * Only keep the bits of one word of a plane that are also set in another plane or in a given mask.
+	 * @return The bits that were removed.
+	 */
+	public long retain(int plane, int keep, int x, int w, long mask){
+		int i = x*words+w;
+		long removed = planes[plane][i] & ~(planes[keep][i] | mask);
+		planes[plane][i] &= ~removed;
+		return removed;
+	}
+
+	/**
+	 * Find the next set bit of a plane. Bits are ordered by x and then by y.
+	 * @param plane The plane to search.
+	 * @param from The bit position to start at.
+	 * @return The bit position of the next set bit, or -1 if there is none.
+	 */
+	public int next(int plane, int from){
+		long[] p = planes[plane];
+		int i = from>>>6;
+		if(i >= p.length) return -1;
+		long word = p[i] & (-1L<<from);
+		while(word == 0){
+			if(++i == p.length) return -1;
+			word = p[i];
+		}
+		return (i<<6)+Long.numberOfTrailingZeros(word);
+	}
+
+	public int getX(int position){ return (position>>>6)/words; }
+	public int getY(int position){ return position-getX(position)*(words<<6); }
+
+	public int getAgents(int x, int y){
+		Integer n = agents.get(x*height+y);
+		return n == null ? 0 : n;
+	}
+	public void setAgents(int x, int y, int n){
+		if(n == 0) agents.remove(x*height+y);
+		else agents.put(x*height+y, n);
+	}
+
+	public int getWidth(){ return width; }
+	public int getHeight(){ return height; }
+	public int getWords(){ return words; }
+
+	/** Write all planes and the numbers of seen agents. */
+	public void write(DataOutput out) throws IOException {
+		for(long[] plane : planes)
+			for(long word : plane) out.writeLong(word);
+		out.writeInt(agents.size());
+		for(Map.Entry<Integer,Integer> e : agents.entrySet()){
+			out.writeInt(e.getKey());
+			out.writeInt(e.getValue());
+		}
+	}
+
+	/** Replace all beliefs by what {@link #write(DataOutput)} wrote for a world of the same dimensions. */
+	public void read(DataInput in) throws IOException {
+		for(long[] plane : planes)
+			for(int i = 0; i < plane.length; i++) plane[i] = in.readLong();
+		agents.clear();
+		for(int i = in.readInt(); i > 0; i--) agents.put(in.readInt(), in.readInt());
+	}
+}
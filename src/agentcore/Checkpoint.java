@@ -0,0 +1,113 @@
+package agentcore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import environment.Wumpus;
+/**
+ * A saved simulation: the state of the world and the beliefs of the agents. Checkpoints are written when the agents
+ * are not running, e.g. after an episode halted them. Restoring a checkpoint gives a world in the saved state, and
+ * agents that get the saved beliefs when they are instantiated (see {@link WumpusAgent#setCheckpoint(Checkpoint)}).
+ * Those agents start again with their initial strategy, because goals, plans and messages that were not yet handled
+ * are not saved.
+ *
+ * A checkpoint file is gzipped. It holds the int MAGIC, the int VERSION, the number of moves made so far, the length
+ * and bytes of the world (Wumpus.writeCheckpoint), the number of agents and per agent its id and the length and
+ * bytes of its beliefs (WumpusContext.writeCheckpoint). The sections are kept as bytes, such that each agent reads
+ * only its own beliefs when it is instantiated.
+ *
+ * @author Bas Testerink
+ */
+public class Checkpoint {
+	public static final int MAGIC = 0x57434B50, VERSION = 2;	// "WCKP"
+	private int moves;											// Moves made before the checkpoint
+	private byte[] world;										// The world section
+	private Map<Integer, byte[]> agents = new HashMap<Integer, byte[]>(); // Beliefs section per agent id
+
+	private Checkpoint(){}
+
+	/**
+	 * Write a checkpoint. The agents must not be running.
+	 * @param file The file to write.
+	 * @param env The world.
+	 * @param moves Number of moves made so far.
+	 * @param agents The agents whose beliefs are saved.
+	 */
+	public static void write(String file, Wumpus env, int moves, List<WumpusAgentInstantiation> agents) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file), 1<<16)));
+		try{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(moves);
+			ByteArrayOutputStream section = new ByteArrayOutputStream();
+			env.writeCheckpoint(new DataOutputStream(section));
+			writeSection(out, section);
+			out.writeInt(agents.size());
+			for(WumpusAgentInstantiation a : agents){
+				WumpusContext context = (WumpusContext)a.getContext();
+				section.reset();
+				context.writeCheckpoint(new DataOutputStream(section));
+				out.writeInt(context.getID());						// The number of the agent in the world
+				writeSection(out, section);
+			}
+		} finally { out.close(); }
+	}
+
+	/** Read a checkpoint file. */
+	public static Checkpoint read(String file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file), 1<<16)));
+		try{
+			if(in.readInt() != MAGIC) throw new IOException(file+" is not a checkpoint");
+			int version = in.readInt();
+			if(version != VERSION) throw new IOException(file+" has unknown version "+version);
+			Checkpoint r = new Checkpoint();
+			r.moves = in.readInt();
+			r.world = readSection(in);
+			for(int i = in.readInt(); i > 0; i--) r.agents.put(in.readInt(), readSection(in));
+			return r;
+		} finally { in.close(); }
+	}
+
+	/** Put the world in the saved state. */
+	public void restoreWorld(Wumpus env) throws IOException {
+		env.readCheckpoint(new DataInputStream(new ByteArrayInputStream(world)));
+	}
+
+	/**
+	 * Give an agent its saved beliefs.
+	 * @param context The beliefs of the agent.
+	 * @param id Id of the agent.
+	 * @return False if the checkpoint has no beliefs of the agent, the context is then unchanged.
+	 */
+	public boolean restore(WumpusContext context, int id) throws IOException {
+		byte[] beliefs = agents.get(id);
+		if(beliefs == null) return false;
+		context.readCheckpoint(new DataInputStream(new ByteArrayInputStream(beliefs)));
+		return true;
+	}
+
+	public int getMoves(){ return moves; }
+
+	private static void writeSection(DataOutputStream out, ByteArrayOutputStream section) throws IOException {
+		out.writeInt(section.size());
+		section.writeTo(out);
+	}
+
+	private static byte[] readSection(DataInputStream in) throws IOException {
+		byte[] r = new byte[in.readInt()];
+		in.readFully(r);
+		return r;
+	}
+}
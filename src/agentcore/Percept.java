@@ -1,12 +1,17 @@
 package agentcore;
+
+import java.util.Arrays;
+
 /**
  * Auxiliary class that is a data container for perception.
  * 
  * @author Bas Testerink
  */
 public class Percept {
-	private boolean breeze, stench, glitter, agent0, agent1, agent2, agent3, chest;
+	private boolean breeze, stench, glitter, chest;
 	private int x, y;
+	private int[] agents = new int[4];	// Agents that stand on the perceived spot (the perceiver included)
+	private int agentAmount = 0;		// Number of used entries in agents
 	public boolean isBreeze() {
 		return breeze;
 	}
@@ -25,29 +30,18 @@ public class Percept {
 	public void setGlitter(boolean glitter) {
 		this.glitter = glitter;
 	}
-	public boolean isAgent0() {
-		return agent0;
+	public int getAgentAmount() {
+		return agentAmount;
 	}
-	public void setAgent0(boolean agent0) {
-		this.agent0 = agent0;
+	public int getAgent(int i) {
+		return agents[i];
 	}
-	public boolean isAgent1() {
-		return agent1;
+	public void addAgent(int agent) {
+		if(agentAmount == agents.length) agents = Arrays.copyOf(agents, agentAmount*2);
+		agents[agentAmount++] = agent;
 	}
-	public void setAgent1(boolean agent1) {
-		this.agent1 = agent1;
-	}
-	public boolean isAgent2() {
-		return agent2;
-	}
-	public void setAgent2(boolean agent2) {
-		this.agent2 = agent2;
-	}
-	public boolean isAgent3() {
-		return agent3;
-	}
-	public void setAgent3(boolean agent3) {
-		this.agent3 = agent3;
+	public void clearAgents() {
+		agentAmount = 0;
 	}
 	public boolean isChest() {
 		return chest;
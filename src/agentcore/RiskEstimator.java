@@ -0,0 +1,459 @@
+package agentcore;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import pathplanning.GridPathEngine;
+/**
+ * Estimates the chance that an unvisited cell on the frontier (next to a visited cell) holds a pit or the wumpus. Used
+ * when no cell is known to be safe anymore, so that an agent can take the least risky step into the unknown.
+ *
+ * Pits: every breeze demands a pit in one of its unvisited neighbors that can have a pit. Cells that share a breeze
+ * depend on each other, so the frontier is split into connected components, which are independent. For every
+ * component the pit assignments that satisfy all its breezes are counted per number of pits. Each cell has a pit with
+ * the same prior chance, so a model with k pits weighs (prior/(1-prior))^k. The counts do not depend on the prior and
+ * are cached per component, so components that did not change since the last estimate are not counted again.
+ * Components with more than {@link #MAX_EXACT} cells are not counted, instead a cell gets the highest chance that one
+ * of its breezes gives it on its own.
+ *
+ * The estimates are kept between updates. The cells whose beliefs changed are passed to {@link #invalidate(int)}, and
+ * only the frontier cells near them and the components that they are in are estimated again. A component is found by
+ * following breezes from cell to cell, so the breezes of the rest of the world are not looked at.
+ *
+ * Wumpus: there is only one wumpus. If its location is known then only that cell has it, otherwise the cells that can
+ * have the wumpus and are next to all smelled stenches share the chance equally.
+ *
+ * @author Bas Testerink
+ */
+public class RiskEstimator {
+	public static final int MAX_EXACT = 20;					// Largest component for which the models are counted
+	public static final double DEFAULT_PIT_PRIOR = 0.2;		// Pit prior if the pit density of the world is not known
+	public static final double MIN_PIT_PRIOR = 0.001;		// Priors are kept this far from 0 and 1, where the weights break down
+	private static final int MAX_CACHED = 1024;				// Cached components before the cache is cleared
+	private static final int[][] delta = new int[][]{{-1,0},{1,0},{0,-1},{0,1}}; // To loop through neighboring coordinates
+	private BeliefPlanes beliefs;							// Beliefs of the agent
+	private int width, height;								// Dimensions of the world
+	private double pitPrior = DEFAULT_PIT_PRIOR;				// Chance that a cell has a pit without any other information
+	private boolean valid = false;							// Whether the estimates are up to date with the beliefs
+	private boolean full = true;							// Whether all estimates have to be made again
+	private int[] frontier = new int[16];					// Frontier cells (x*height+y) in increasing order
+	private int frontierAmount;								// Number of frontier cells
+	private double[] pit = new double[16];					// Chance of a pit per frontier cell, kept between estimates
+	private double[] risk = new double[16];					// Chance of death per frontier cell
+	private int[] nextFrontier = new int[16];				// Frontier while it is merged with changed cells, swapped afterwards
+	private double[] nextPit = new double[16];				// Chances of the frontier while it is merged
+	private BitSet isTouched = new BitSet();				// Cells whose beliefs changed since the last estimate
+	private int[] touched = new int[16];					// The same cells in a list
+	private int touchedAmount;
+	private int[] near = new int[16];						// Reused for the cells near the changed cells
+	private int[] stamp = new int[16];						// Per frontier cell the estimate that last reached it
+	private int estimates = 0;								// Number of the current estimate
+	private int[] component = new int[16];					// Frontier cells (indices) of the component that is estimated
+	private int componentAmount;
+	private int[] breezeCells = new int[16];				// Breezes of the component, as x*height+y
+	private int[] candidates = new int[64];					// Per breeze b its frontier cells at [b*4, b*4+4)
+	private int[] candidateAmount = new int[16];			// Per breeze its number of frontier cells
+	private int[] order = new int[16];						// Breezes of the component by increasing cell
+	private int breezeAmount;
+	private BitSet seenBreeze = new BitSet();				// Breezes that were looked at for the current component
+	private int[] local = new int[16];						// Per frontier cell its index in the component
+	private int[] stenches = new int[16];					// Reused for the smelled stenches
+	private long[] cacheHashes = new long[MAX_CACHED*2];	// Open addressing table of model counts, by hash of the component
+	private int[][] cacheKeys = new int[MAX_CACHED*2][];	// Per slot the sorted cells, -1 and the sorted breezes of the component
+	private double[][][] cacheCounts = new double[MAX_CACHED*2][][];
+	private int cached = 0;									// Number of used slots
+
+	public RiskEstimator(BeliefPlanes beliefs){
+		this.beliefs = beliefs;
+		width = beliefs.getWidth();
+		height = beliefs.getHeight();
+	}
+
+	/** Register that all beliefs may have changed, all estimates are made again when they are asked for. */
+	public void invalidate(){ 
+		valid = false; 
+		full = true;
+	}
+
+	/** Register that the beliefs about a cell changed, the estimates near it are made again when they are asked for. */
+	public void invalidate(int cell){
+		valid = false;
+		if(full || isTouched.get(cell)) return;
+		isTouched.set(cell);
+		if(touchedAmount == touched.length) touched = Arrays.copyOf(touched, touchedAmount*2);
+		touched[touchedAmount++] = cell;
+	}
+
+	public double getPitPrior(){ return pitPrior; }
+	/** Set the pit prior, which is kept within [MIN_PIT_PRIOR, 1-MIN_PIT_PRIOR]. */
+	public void setPitPrior(double pitPrior){
+		this.pitPrior = Math.min(Math.max(pitPrior, MIN_PIT_PRIOR), 1-MIN_PIT_PRIOR);
+		invalidate();
+	}
+
+	/** Chance that entering a frontier cell is fatal, or -1 if the cell is not on the frontier. */
+	public double getRisk(int x, int y){
+		estimate();
+		int i = Arrays.binarySearch(frontier, 0, frontierAmount, x*height+y);
+		return i < 0 ? -1 : risk[i];
+	}
+
+	/**
+	 * Find the least risky frontier cell that can be reached. Of equally risky cells the nearest one is taken.
+	 * @param paths The path engine, which has searched from the agent's position.
+	 * @param threshold The highest risk that is acceptable.
+	 * @return The cell as x*height+y, or -1 if no reachable cell is within the threshold.
+	 */
+	public int leastRisky(GridPathEngine paths, double threshold){
+		estimate();
+		int best = -1, bestDistance = Integer.MAX_VALUE;
+		for(int i = 0; i < frontierAmount; i++){
+			if(risk[i] > threshold || (best >= 0 && risk[i] > risk[best])) continue;
+			int distance = approachDistance(paths, frontier[i]);
+			if(distance == Integer.MAX_VALUE) continue;
+			if(best < 0 || risk[i] < risk[best] || distance < bestDistance){
+				best = i;
+				bestDistance = distance;
+			}
+		}
+		return best < 0 ? -1 : frontier[best];
+	}
+
+	/** Shortest distance to a neighbor of a cell, from where the cell can be entered. */
+	private int approachDistance(GridPathEngine paths, int cell){
+		int x = cell/height, y = cell%height, r = Integer.MAX_VALUE;
+		for(int[] d : delta)
+			if(inWorld(x+d[0], y+d[1])) r = Math.min(r, paths.getDistance((x+d[0])*height+y+d[1]));
+		return r;
+	}
+
+	/** Make the estimates again if the beliefs changed. */
+	private void estimate(){
+		if(valid) return;
+		if(++estimates == 0){										// Stamps wrapped around, forget all old estimates
+			Arrays.fill(stamp, 0);
+			estimates = 1;
+		}
+		if(full){
+			findFrontier();
+			if(pit.length < frontier.length) pit = new double[frontier.length];
+			if(stamp.length < frontier.length) stamp = new int[frontier.length];
+			for(int i = 0; i < frontierAmount; i++) estimatePits(i);
+		} else {
+			updateFrontier();
+			for(int t = 0; t < touchedAmount; t++){					// Frontier cells up to two cells away share a breeze with it
+				int x = touched[t]/height, y = touched[t]%height;
+				for(int dX = -2; dX <= 2; dX++)
+					for(int dY = Math.abs(dX)-2; dY <= 2-Math.abs(dX); dY++){
+						if(!inWorld(x+dX, y+dY)) continue;
+						int i = Arrays.binarySearch(frontier, 0, frontierAmount, (x+dX)*height+y+dY);
+						if(i >= 0) estimatePits(i);
+					}
+			}
+		}
+		for(int t = 0; t < touchedAmount; t++) isTouched.clear(touched[t]);
+		touchedAmount = 0;
+		full = false;
+		double[] wumpus = new double[frontierAmount];
+		estimateWumpus(wumpus);
+		if(risk.length < frontierAmount) risk = new double[frontier.length];
+		for(int i = 0; i < frontierAmount; i++)
+			risk[i] = 1-(1-pit[i])*(1-wumpus[i]);
+		valid = true;
+	}
+
+	/** Collect the unvisited cells next to visited cells that are not known to be safe. */
+	private void findFrontier(){
+		frontierAmount = 0;
+		BitSet seen = new BitSet();
+		for(int p = beliefs.next(BeliefPlanes.VISITED, 0); p >= 0; p = beliefs.next(BeliefPlanes.VISITED, p+1)){
+			int x = beliefs.getX(p), y = beliefs.getY(p);
+			for(int[] d : delta){
+				int nX = x+d[0], nY = y+d[1];
+				if(!inWorld(nX, nY) || seen.get(nX*height+nY) || beliefs.get(BeliefPlanes.VISITED, nX, nY)) continue;
+				seen.set(nX*height+nY);
+				if(!beliefs.get(BeliefPlanes.CAN_HAVE_PIT, nX, nY) && !beliefs.get(BeliefPlanes.CAN_HAVE_WUMPUS, nX, nY)) continue;
+				if(frontierAmount == frontier.length) frontier = Arrays.copyOf(frontier, frontierAmount*2);
+				frontier[frontierAmount++] = nX*height+nY;
+			}
+		}
+		Arrays.sort(frontier, 0, frontierAmount);
+	}
+
+	/** 
+	 * Bring the frontier up to date with the changed cells. Only a changed cell and its neighbors can enter or leave the
+	 * frontier. The kept cells keep their chances.
+	 */
+	private void updateFrontier(){
+		int nearAmount = 0;
+		for(int t = 0; t < touchedAmount; t++){
+			int x = touched[t]/height, y = touched[t]%height;
+			if(nearAmount+5 > near.length) near = Arrays.copyOf(near, near.length*2+5);
+			near[nearAmount++] = touched[t];
+			for(int[] d : delta) if(inWorld(x+d[0], y+d[1])) near[nearAmount++] = (x+d[0])*height+y+d[1];
+		}
+		Arrays.sort(near, 0, nearAmount);
+		int size = frontierAmount+nearAmount;
+		if(nextFrontier.length < size){
+			nextFrontier = new int[size*2];
+			nextPit = new double[size*2];
+		}
+		int n = 0;
+		for(int i = 0, j = 0; i < frontierAmount || j < nearAmount;){			// Merge the frontier with the changed cells
+			if(j < nearAmount && j > 0 && near[j] == near[j-1]){ j++; continue; }
+			if(j == nearAmount || (i < frontierAmount && frontier[i] < near[j])){
+				nextFrontier[n] = frontier[i];
+				nextPit[n++] = pit[i++];
+			} else {
+				if(i < frontierAmount && frontier[i] == near[j]) i++;
+				if(isFrontier(near[j])){
+					nextFrontier[n] = near[j];
+					nextPit[n++] = 0;										// Estimated below, as it is near a changed cell
+				}
+				j++;
+			}
+		}
+		int[] f = frontier;
+		frontier = nextFrontier;
+		nextFrontier = f;
+		double[] p = pit;
+		pit = nextPit;
+		nextPit = p;
+		frontierAmount = n;
+		if(stamp.length < frontier.length) stamp = Arrays.copyOf(stamp, frontier.length);
+	}
+
+	/** Whether a cell is unvisited, can be deadly and is next to a visited cell. */
+	private boolean isFrontier(int cell){
+		int x = cell/height, y = cell%height;
+		if(beliefs.get(BeliefPlanes.VISITED, x, y)) return false;
+		if(!beliefs.get(BeliefPlanes.CAN_HAVE_PIT, x, y) && !beliefs.get(BeliefPlanes.CAN_HAVE_WUMPUS, x, y)) return false;
+		for(int[] d : delta)
+			if(inWorld(x+d[0], y+d[1]) && beliefs.get(BeliefPlanes.VISITED, x+d[0], y+d[1])) return true;
+		return false;
+	}
+
+	/** 
+	 * Estimate the pit chance of a frontier cell and of the other cells of its component, unless that was already done
+	 * in this estimate. 
+	 */
+	private void estimatePits(int seed){
+		if(stamp[seed] == estimates) return;
+		stamp[seed] = estimates;
+		component[0] = seed;
+		componentAmount = 1;
+		breezeAmount = 0;
+		for(int head = 0; head < componentAmount; head++){			// Follow the breezes to the other cells
+			int c = component[head];
+			int x = frontier[c]/height, y = frontier[c]%height;
+			if(beliefs.get(BeliefPlanes.PIT, x, y)) pit[c] = 1;
+			else if(beliefs.get(BeliefPlanes.CAN_HAVE_PIT, x, y)) pit[c] = pitPrior;
+			else pit[c] = 0;
+			if(pit[c] == 1 || pit[c] == 0) continue;					// Not a cell that can explain a breeze
+			for(int[] d : delta)
+				if(inWorld(x+d[0], y+d[1])) addBreeze(x+d[0], y+d[1]);
+		}
+		for(int b = 0; b < breezeAmount; b++) seenBreeze.clear(breezeCells[b]);
+		if(breezeAmount == 0) return;									// The cell has the prior chance
+		if(componentAmount > MAX_EXACT){
+			for(int b = 0; b < breezeAmount; b++)
+				for(int i = 0; i < candidateAmount[b]; i++){
+					int c = candidates[b*4+i];
+					pit[c] = Math.max(pit[c], 1.0/candidateAmount[b]);
+				}
+			return;
+		}
+		Arrays.sort(component, 0, componentAmount);					// Sorted cells and breezes identify the component
+		for(int b = 0; b < breezeAmount; b++) order[b] = b;
+		for(int b = 1; b < breezeAmount; b++)							// Few breezes, so insertion sort
+			for(int i = b; i > 0 && breezeCells[order[i]] < breezeCells[order[i-1]]; i--){
+				int o = order[i];
+				order[i] = order[i-1];
+				order[i-1] = o;
+			}
+		double[][] counts = cachedCounts();
+		if(counts == null){
+			if(local.length < frontier.length) local = new int[frontier.length];
+			for(int i = 0; i < componentAmount; i++) local[component[i]] = i;
+			int[][] localBreezes = new int[breezeAmount][];
+			for(int b = 0; b < breezeAmount; b++){
+				int o = order[b];
+				localBreezes[b] = new int[candidateAmount[o]];
+				for(int i = 0; i < candidateAmount[o]; i++) localBreezes[b][i] = local[candidates[o*4+i]];
+			}
+			counts = countModels(componentAmount, localBreezes);
+			cache(counts);
+		}
+		double ratio = pitPrior/(1-pitPrior);
+		double total = 0;
+		for(int k = 0; k <= componentAmount; k++) total += counts[0][k]*Math.pow(ratio, k);
+		for(int i = 0; i < componentAmount; i++){
+			double withPit = 0;
+			for(int k = 0; k <= componentAmount; k++) withPit += counts[i+1][k]*Math.pow(ratio, k);
+			pit[component[i]] = total == 0 ? pitPrior : withPit/total;
+		}
+	}
+
+	/** 
+	 * Add a cell to the breezes of the component if it is a visited cell with a breeze that no known pit explains, and 
+	 * add its frontier cells that can have a pit to the component. 
+	 */
+	private void addBreeze(int x, int y){
+		int cell = x*height+y;
+		if(seenBreeze.get(cell) || !beliefs.get(BeliefPlanes.VISITED, x, y) || !beliefs.get(BeliefPlanes.BREEZE, x, y)) return;
+		if(breezeAmount == breezeCells.length){
+			breezeCells = Arrays.copyOf(breezeCells, breezeAmount*2);
+			candidateAmount = Arrays.copyOf(candidateAmount, breezeAmount*2);
+			candidates = Arrays.copyOf(candidates, breezeAmount*8);
+			order = Arrays.copyOf(order, breezeAmount*2);
+		}
+		int n = 0;
+		for(int[] d : delta){
+			int nX = x+d[0], nY = y+d[1];
+			if(!inWorld(nX, nY)) continue;
+			if(beliefs.get(BeliefPlanes.PIT, nX, nY)) return;			// A known pit explains the breeze
+			if(!beliefs.get(BeliefPlanes.CAN_HAVE_PIT, nX, nY)) continue;
+			int i = Arrays.binarySearch(frontier, 0, frontierAmount, nX*height+nY);
+			if(i >= 0) candidates[breezeAmount*4+n++] = i;
+		}
+		if(n == 0) return;												// Nothing left to explain the breeze
+		seenBreeze.set(cell);											// Unmarked with the other breezes of the component
+		breezeCells[breezeAmount] = cell;
+		candidateAmount[breezeAmount++] = n;
+		for(int i = 0; i < n; i++){
+			int c = candidates[(breezeAmount-1)*4+i];
+			if(stamp[c] == estimates) continue;
+			stamp[c] = estimates;
+			if(componentAmount == component.length) component = Arrays.copyOf(component, componentAmount*2);
+			component[componentAmount++] = c;
+		}
+	}
+
+	/** Hash of the sorted cells and breezes of the component. */
+	private long componentHash(){
+		long h = 17;
+		for(int i = 0; i < componentAmount; i++) h = h*0x9E3779B97F4A7C15L+frontier[component[i]];
+		h = h*0x9E3779B97F4A7C15L-1;
+		for(int b = 0; b < breezeAmount; b++) h = h*0x9E3779B97F4A7C15L+breezeCells[order[b]];
+		return h;
+	}
+
+	/** Whether a cached key holds the sorted cells, -1 and the sorted breezes of the component. */
+	private boolean isComponent(int[] key){
+		if(key.length != componentAmount+1+breezeAmount) return false;
+		for(int i = 0; i < componentAmount; i++) if(key[i] != frontier[component[i]]) return false;
+		for(int b = 0; b < breezeAmount; b++) if(key[componentAmount+1+b] != breezeCells[order[b]]) return false;
+		return key[componentAmount] == -1;
+	}
+
+	/** The cached model counts of the component, or null if they were not counted yet. */
+	private double[][] cachedCounts(){
+		long h = componentHash();
+		for(int slot = (int)(h^(h>>>32)) & (cacheKeys.length-1); cacheKeys[slot] != null; slot = (slot+1) & (cacheKeys.length-1))
+			if(cacheHashes[slot] == h && isComponent(cacheKeys[slot])) return cacheCounts[slot];
+		return null;
+	}
+
+	/** Cache the model counts of the component. The cache is cleared when it is half full. */
+	private void cache(double[][] counts){
+		if(cached >= MAX_CACHED){
+			Arrays.fill(cacheKeys, null);
+			Arrays.fill(cacheCounts, null);
+			cached = 0;
+		}
+		int[] key = new int[componentAmount+1+breezeAmount];
+		for(int i = 0; i < componentAmount; i++) key[i] = frontier[component[i]];
+		key[componentAmount] = -1;
+		for(int b = 0; b < breezeAmount; b++) key[componentAmount+1+b] = breezeCells[order[b]];
+		long h = componentHash();
+		int slot = (int)(h^(h>>>32)) & (cacheKeys.length-1);
+		while(cacheKeys[slot] != null) slot = (slot+1) & (cacheKeys.length-1);
+		cacheHashes[slot] = h;
+		cacheKeys[slot] = key;
+		cacheCounts[slot] = counts;
+		cached++;
+	}
+
+	/**
+	 * Count the pit assignments of a component that satisfy all its breezes.
+	 * @param n Number of cells of the component.
+	 * @param breezes Per breeze the cells (0 to n-1) of which at least one has a pit.
+	 * @return Per number of pits k: at [0][k] the number of models and at [i+1][k] the number of models where cell i has a pit.
+	 */
+	private double[][] countModels(int n, int[][] breezes){
+		int[][] closing = new int[n][];										// Per cell the breezes whose last cell it is
+		int[] closingAmount = new int[n];
+		int[] last = new int[breezes.length];
+		for(int b = 0; b < breezes.length; b++){
+			for(int i : breezes[b]) last[b] = Math.max(last[b], i);
+			closingAmount[last[b]]++;
+		}
+		for(int i = 0; i < n; i++) closing[i] = new int[closingAmount[i]];
+		Arrays.fill(closingAmount, 0);
+		for(int b = 0; b < breezes.length; b++) closing[last[b]][closingAmount[last[b]]++] = b;
+		double[][] counts = new double[n+1][n+1];
+		count(0, 0, new boolean[n], breezes, closing, counts);
+		return counts;
+	}
+
+	/** Try both values for cell i and continue with the next cell as long as the closed breezes are satisfied. */
+	private void count(int i, int pits, boolean[] hasPit, int[][] breezes, int[][] closing, double[][] counts){
+		if(i == hasPit.length){
+			counts[0][pits]++;
+			for(int j = 0; j < hasPit.length; j++) if(hasPit[j]) counts[j+1][pits]++;
+			return;
+		}
+		for(int value = 0; value < 2; value++){
+			hasPit[i] = value == 1;
+			boolean satisfied = true;
+			for(int b : closing[i]){
+				boolean any = false;
+				for(int c : breezes[b]) any |= hasPit[c];
+				satisfied &= any;
+			}
+			if(satisfied) count(i+1, pits+value, hasPit, breezes, closing, counts);
+		}
+		hasPit[i] = false;
+	}
+
+	/** Estimate the wumpus chances of the frontier cells. */
+	private void estimateWumpus(double[] wumpus){
+		int known = beliefs.next(BeliefPlanes.WUMPUS, 0);
+		if(known >= 0){
+			int i = Arrays.binarySearch(frontier, 0, frontierAmount, beliefs.getX(known)*height+beliefs.getY(known));
+			if(i >= 0) wumpus[i] = 1;
+			return;
+		}
+		int stenchAmount = 0;
+		for(int p = beliefs.next(BeliefPlanes.STENCH, 0); p >= 0; p = beliefs.next(BeliefPlanes.STENCH, p+1))
+			if(beliefs.get(BeliefPlanes.VISITED, beliefs.getX(p), beliefs.getY(p))){
+				if(stenchAmount == stenches.length) stenches = Arrays.copyOf(stenches, stenchAmount*2);
+				stenches[stenchAmount++] = beliefs.getX(p)*height+beliefs.getY(p);
+			}
+		int candidates = 0;
+		if(stenchAmount == 0){												// The wumpus can be at any cell that is not ruled out
+			for(int p = beliefs.next(BeliefPlanes.CAN_HAVE_WUMPUS, 0); p >= 0; p = beliefs.next(BeliefPlanes.CAN_HAVE_WUMPUS, p+1))
+				if(!beliefs.get(BeliefPlanes.VISITED, beliefs.getX(p), beliefs.getY(p))) candidates++;
+			for(int i = 0; i < frontierAmount; i++)
+				if(beliefs.get(BeliefPlanes.CAN_HAVE_WUMPUS, frontier[i]/height, frontier[i]%height)) wumpus[i] = 1.0/candidates;
+			return;
+		}
+		for(int i = 0; i < frontierAmount; i++){
+			int x = frontier[i]/height, y = frontier[i]%height;
+			boolean candidate = beliefs.get(BeliefPlanes.CAN_HAVE_WUMPUS, x, y);
+			for(int j = 0; j < stenchAmount; j++) candidate &= Math.abs(stenches[j]/height-x)+Math.abs(stenches[j]%height-y) == 1;
+			if(candidate){
+				wumpus[i] = 1;
+				candidates++;
+			}
+		}
+		for(int i = 0; i < frontierAmount; i++) wumpus[i] /= Math.max(candidates, 1);
+	}
+
+	private int find(int[] parent, int i){
+		while(parent[i] != i) i = parent[i] = parent[parent[i]];
+		return i;
+	}
+
+	private boolean inWorld(int x, int y){ return x>=0 && x<width && y>=0 && y<height; }
+}
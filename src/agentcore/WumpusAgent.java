@@ -1,5 +1,8 @@
 package agentcore;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue; 
 
 import strategies.*; 
@@ -9,6 +12,7 @@ import agentcore.Agent;
 import agentcore.AgentInstantiation;
 import agentcore.Strategy;
 import agentplatform.PlatformNode;
+import tracing.TraceWriter;
 
 /**
  * The class of all agents in the world is the same. The initial strategy is to observe the first state 
@@ -20,13 +24,27 @@ import agentplatform.PlatformNode;
  */
 
 public class WumpusAgent extends Agent {
-	public static Strategy initialStrategy = new InitialStrategy();
+	private Strategy initialStrategy = new InitialStrategy();		// Plan to start with, one per agent class so episodes share nothing
 	private AgentInterface agentInterface; 							// The interface of agents to the environment
+	private volatile boolean halted = false;						// When set, instantiations leave the deliberation cycle
+	private TraceWriter traceWriter = null;							// Receives the steps of the instantiations in debug mode, if set
+	private Checkpoint checkpoint = null;							// Saved beliefs that new instantiations start with, if set
+	private double pitPrior = RiskEstimator.DEFAULT_PIT_PRIOR;		// Chance of a pit per cell that the risk estimates of new instantiations assume
+	private List<WumpusAgentInstantiation> instantiations = new ArrayList<WumpusAgentInstantiation>(); // Created agents
 	
 	public WumpusAgent(AgentInterface agentInterface){ 
+		this(agentInterface, 0);
+	}
+	
+	/**
+	 * Create the agent class.
+	 * @param agentInterface The interface to the environment.
+	 * @param riskThreshold Highest chance of death that agents accept to explore further when no safe spot is left.
+	 */
+	public WumpusAgent(AgentInterface agentInterface, double riskThreshold){ 
 		super();
 		this.agentInterface = agentInterface; 							// The interface to the environment for performing actions
-		goalStrategies.add(new WumpusExploreStrategy()); 				// The strategy to explore the world
+		goalStrategies.add(new WumpusExploreStrategy(riskThreshold)); 	// The strategy to explore the world
 		goalStrategies.add(new TraverseStrategy());						// The strategy to get to a specific location
 		messageHandlingStrategies.add(new WumpusMessageStrategy());		// The strategy to handle a message
 		eventStrategies.add(new AgentAnnouncedStrategy());				// The strategy to handle the announcement of a new agent arrival
@@ -35,6 +53,7 @@ public class WumpusAgent extends Agent {
 	public AgentInstantiation instantiate(Object[] arguments) {
 		// Create belief state
 		WumpusContext context = new WumpusContext(agentInterface);  
+		context.setPitPrior(pitPrior);
 		Messenger messenger = (Messenger)arguments[0];
 		WumpusAgentInstantiation a = new WumpusAgentInstantiation(this, context, messenger);
 		int id = agentInterface.registerAgent(a);
@@ -43,6 +62,12 @@ public class WumpusAgent extends Agent {
 			// Let the agent know its personal ID
 			context.setID(id);
 			
+			// Continue with saved beliefs
+			if(checkpoint != null){
+				try{ checkpoint.restore(context, id); } 
+				catch(IOException e){ e.printStackTrace(); }
+			}
+			
 			// Deliberation cycle
 			Queue<Integer> actorCycle = a.getActorCycle();
 			actorCycle.add(PlatformNode.GOAL_ACHIEVER);
@@ -54,7 +79,26 @@ public class WumpusAgent extends Agent {
 			//Initial plan
 			a.adoptPlan(initialStrategy.instantiate(null,a));
 			
+			synchronized(instantiations){ instantiations.add(a); }
 			return a;
 		} else return null; // Too many agents registered
 	}
+	
+	/** Stop all instantiations of this agent class. They throw an AgentHaltedException when they request their next actor. */
+	public void halt(){ halted = true; }
+	public boolean isHalted(){ return halted; }
+	public AgentInterface getAgentInterface(){ return agentInterface; }
+	/** Write the steps of the instantiations to a trace writer in debug mode, instead of to JSON files. */
+	public void setTraceWriter(TraceWriter traceWriter){ this.traceWriter = traceWriter; }
+	/** Set the chance of a pit per cell that agents assume, which should be the pit density of the world. */
+	public void setPitPrior(double pitPrior){ this.pitPrior = pitPrior; }
+	public double getPitPrior(){ return pitPrior; }
+	public TraceWriter getTraceWriter(){ return traceWriter; }
+	/** Give instantiations that are created from now on their beliefs from a checkpoint. */
+	public void setCheckpoint(Checkpoint checkpoint){ this.checkpoint = checkpoint; }
+	
+	/** Get a copy of the list of instantiations of this class that are registered in the environment. */
+	public List<WumpusAgentInstantiation> getInstantiations(){
+		synchronized(instantiations){ return new ArrayList<WumpusAgentInstantiation>(instantiations); }
+	}
 }
@@ -1,12 +1,132 @@
 package agentcore;
 
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import messaging.LocalMessage;
 import messaging.Messenger;
+import tracing.TraceRecord;
+import tracing.TraceWriter;
+import triggers.KnowledgeMessage;
+import triggers.KnowledgeSummary;
 import agentcore.AgentInstantiation; 
 
 public class WumpusAgentInstantiation extends AgentInstantiation {
+	private StringBuffer text = new StringBuffer();				// Reused to obtain the texts of triggers for traces
+	private BitSet spots = new BitSet();						// Reused to collect the safe spots of merged messages, as x*height+y
 	
 	public WumpusAgentInstantiation(WumpusAgent agentClass, WumpusContext context, Messenger messenger){
 		super(agentClass, messenger);
 		this.context = context; 
 	}
+	
+	/**
+	 * Take the messages that wait for the agent. The knowledge about safe spots and the wumpus of all of them is merged 
+	 * into one summary in which each spot occurs once, so that the beliefs are updated once for the whole mailbox and 
+	 * the clear world goal is adopted again at most once. Other messages are kept as they are.
+	 */
+	public synchronized void getMessages(List<Trigger> messages){
+		int start = messages.size(), kept = start, merged = 0;
+		super.getMessages(messages);
+		int height = ((WumpusAgent)agentClass).getAgentInterface().getWorldHeight();
+		int wumpusX = -1, wumpusY = -1;
+		for(int i = start; i < messages.size(); i++){
+			Trigger t = messages.get(i);
+			Object content = t instanceof LocalMessage ? ((LocalMessage)t).getContent() : null;
+			if(content instanceof KnowledgeSummary){
+				KnowledgeSummary s = (KnowledgeSummary)content;
+				for(int j = 0; j < s.getAmount(); j++) spots.set(s.getX(j)*height+s.getY(j));
+				if(s.hasWumpus()){
+					wumpusX = s.getWumpusX();
+					wumpusY = s.getWumpusY();
+				}
+				merged++;
+			} else if(content instanceof KnowledgeMessage && (((KnowledgeMessage)content).hasWumpus() || 
+					(!((KnowledgeMessage)content).canHaveWumpus() && !((KnowledgeMessage)content).canHavePit()))){
+				KnowledgeMessage k = (KnowledgeMessage)content;
+				if(k.hasWumpus()){
+					wumpusX = k.getX();
+					wumpusY = k.getY();
+				} else spots.set(k.getX()*height+k.getY());
+				merged++;
+			} else messages.set(kept++, t);								// Not mergeable knowledge
+		}
+		messages.subList(kept, messages.size()).clear();
+		if(merged == 0) return;
+		int[] cells = new int[spots.cardinality()*2];
+		for(int c = spots.nextSetBit(0), i = 0; c >= 0; c = spots.nextSetBit(c+1), i += 2){
+			cells[i] = c/height;
+			cells[i+1] = c%height;
+		}
+		spots.clear();
+		messages.add(new LocalMessage().reInit(id, id, new KnowledgeSummary(cells, wumpusX, wumpusY)));
+	}
+	
+	/** 
+	 * Halted agents leave the deliberation cycle by taking the actor that serves them down with them. Visited spots that
+	 * were not sent to the other agents yet are sent first.
+	 */
+	public int nextActorType(){
+		if(((WumpusAgent)agentClass).isHalted()){
+			if(context != null) ((WumpusContext)context).sendSummaries(this); // Not set for the instantiation that ends idle actors
+			throw new AgentHaltedException(id);
+		}
+		return super.nextActorType();
+	}
+	
+	/**
+	 * Called after every step in debug mode. If the agent class has a trace writer, then the step is handed to it as a 
+	 * record with the beliefs that changed since the last record that the writer accepted, such that a dropped record
+	 * does not lose changes. Otherwise the full state is appended to ./output/id.json as usual, and the changed beliefs
+	 * are only forgotten once the state is written.
+	 */
+	public void toJSON(){
+		TraceWriter trace = ((WumpusAgent)agentClass).getTraceWriter();
+		if(trace == null){
+			StringBuffer json = new StringBuffer();
+			toJSON(json);
+			try{
+				BufferedWriter out = new BufferedWriter(new FileWriter("./output/"+id+".json", true));
+				try{ out.write(json.toString()); }
+				finally { out.close(); }
+				((WumpusContext)context).traced();
+			} catch(IOException e){ e.printStackTrace(); }
+			return;
+		}
+		TraceRecord r = new TraceRecord(id, System.nanoTime());
+		synchronized(this){
+			Integer next = actorCycle.peek();
+			if(next != null) r.nextActor = next;
+			r.lists[TraceRecord.GOALS] = texts(goals);
+			r.lists[TraceRecord.EXTERNAL_EVENTS] = texts(externalEvents);
+			r.lists[TraceRecord.INTERNAL_EVENTS] = texts(internalEvents);
+			r.lists[TraceRecord.PLANS] = new String[plans.size()];
+			for(int i = 0; i < plans.size(); i++){
+				text.setLength(0);
+				plans.get(i).toJSON(text);
+				r.lists[TraceRecord.PLANS][i] = text.toString();
+			}
+			if(messenger != null){
+				List<Trigger> messages = new ArrayList<Trigger>();
+				messenger.getMessages(id, messages, false);
+				r.lists[TraceRecord.MESSAGES] = texts(messages);
+			}
+			((WumpusContext)context).trace(r);
+			if(trace.offer(r)) ((WumpusContext)context).traced();
+		}
+	}
+	
+	private String[] texts(List<Trigger> triggers){
+		String[] r = new String[triggers.size()];
+		for(int i = 0; i < r.length; i++){
+			text.setLength(0);
+			triggers.get(i).toJSON(text);
+			r[i] = text.toString();
+		}
+		return r;
+	}
 }
@@ -1,7 +1,6 @@
 package agentcore;
 /** Some constants throughout the project. */
 public class WumpusConstants {
-	public static final int UP=0, DOWN=1, RIGHT=2, LEFT=3, GRAB=4, DROP=5, CHEST=6, SAFE=7, GOLD=8;
-	public static final int MAXAGENTAMOUNT=4;
+	public static final int UP=0, DOWN=1, RIGHT=2, LEFT=3, GRAB=4, DROP=5, CHEST=6, SAFE=7, GOLD=8, RISKY=9;
 	public static final int VERSION1=1; // Agent type 
 }
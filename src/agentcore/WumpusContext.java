@@ -1,110 +1,100 @@
 package agentcore;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList; 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List; 
-import pathplanning.Dijkstra;
-import pathplanning.Vertex;
+import java.util.Map;
+import pathplanning.GridPathEngine;
+import pathplanning.GridRoute;
+import tracing.TraceRecord;
 import triggers.KnowledgeMessage;
+import triggers.KnowledgeSummary;
 import environment.AgentInterface;
 import agentcore.AgentInstantiation;
 import agentcore.Context;
 
 /**
  * This class implements belief reasoning and the internal interface to the environment. 
+ * 
+ * Visited spots are only announced right away to the agents whose region of interest holds them. The region of an 
+ * agent covers its position and the target of its route, widened by INTEREST_MARGIN cells for the frontier around them.
+ * The spots that other agents are not interested in are collected per agent and sent as one summary every 
+ * SUMMARY_PERIOD announcements, so that the number of messages depends on how close agents are rather than on how 
+ * many there are.
  *
  * @author Bas Testerink
  */
 
 public class WumpusContext extends Context {
-	private GridCell[][] world; 								// Believed world
-	private List<Vertex> arrayForm; 							// Array form of the gridcells for Dijkstra's algorithm
+	private BeliefPlanes beliefs;								// Believed world
+	private int width, height;									// Dimensions of the world
+	private GridPathEngine paths;								// Traversable cells and the distances from the agent's position
+	private GridRoute route = new GridRoute();					// Route that the agent is following
+	private ActionBatch batch = new ActionBatch();				// Moves along the route that are submitted at once
+	private boolean perceived = false;							// Whether the percept container holds a percept of the current position that was not processed by perceive yet
+	private boolean located = false;							// Whether the percept container holds the current position
 	private AgentModel me;										// View of oneself
 	private boolean pursuingClearWorldGoal, explored; 			// Whether a strategy has been selected to clear the world of gold, whether there is something left to explore
 	private List<AgentModel> others;							// List of the other agents (currently not used)
 	private AgentInterface agentInterface;						// Environment interface
 	private Percept perceptContainer; 							// Made as an attribute so it is not necessary to make a new object for every perceive action
-	private List<Vertex> goldSpots, chestSpots, safeSpots;		// Location of gold, chests and safe spots
+	private List<GridCell> goldSpots, chestSpots, safeSpots;	// Location of gold, chests and safe spots
 	private boolean foundWumpus = false;						// Whether the wumpus has been found
+	private WumpusLocator locator;								// Finds the wumpus from the smelled stenches
+	private RiskEstimator risk;									// Chances of death on the frontier of the explored cells
+	private double pitPrior = RiskEstimator.DEFAULT_PIT_PRIOR;	// Chance of a pit per cell that the risk estimates assume
+	private int ventured = -1;									// Frontier cell that is made traversable to enter it, as x*height+y
 	private int wumpusX, wumpusY;								// Location of the wumpus
 	private List<Integer> otherAgentIDs;						// Ids of the other agents
-	private static int[][] delta = new int[][]{{-1,0},{1,0},{0,-1},{0,1}}; // To loop through neighboring coordinates
+	public static final int INTEREST_MARGIN = 4;				// Cells around the position and route target that an agent is interested in
+	public static final int SUMMARY_PERIOD = 8;					// Announcements after which the unsent spots are summarized
+	private Map<Integer, BitSet> unsent = new HashMap<Integer, BitSet>(); // Per other agent the visited spots that it was not told about, as x*height+y
+	private int announcements = 0;								// Number of visited spots announced
+	private static final int[][] delta = new int[][]{{-1,0},{1,0},{0,-1},{0,1}}; // To loop through neighboring coordinates
+	private int[] dirty = new int[16];							// Cells whose beliefs changed since the last update, as x*height+y
+	private int dirtyAmount;									// Number of dirty cells
+	private BitSet isDirty = new BitSet();						// Whether a cell is already in the dirty list
+	private int sweptWumpus = -1;								// Wumpus location for which all other cells are ruled out, as x*height+y
+	private int[] unpublished = new int[16];					// Cells whose beliefs changed since they were last shown, as x*height+y
+	private int unpublishedAmount;								// Number of unpublished cells
+	private BitSet isUnpublished = new BitSet();				// Whether a cell is already in the unpublished list
+	private int[] untraced = new int[16];						// Cells whose beliefs changed since the last trace record, as x*height+y
+	private int untracedAmount;									// Number of untraced cells
+	private BitSet isUntraced = new BitSet();					// Whether a cell is already in the untraced list
 
 	public WumpusContext(AgentInterface agentInterface){
 		this.agentInterface = agentInterface;
-		world = new GridCell[agentInterface.getWorldWidth()][agentInterface.getWorldHeight()];
-		arrayForm = new ArrayList<Vertex>();
-		for(int x = 0; x < world.length; x++)
-			for(int y = 0; y < world[0].length; y++){
-				world[x][y] = new GridCell(x,y);
-				arrayForm.add(world[x][y]); // For input of Dijkstra's
-			}
+		width = agentInterface.getWorldWidth();
+		height = agentInterface.getWorldHeight();
+		beliefs = new BeliefPlanes(width, height);
+		paths = new GridPathEngine(width, height);
+		locator = new WumpusLocator(beliefs);
+		risk = new RiskEstimator(beliefs);
 		me = new AgentModel();
 		pursuingClearWorldGoal = false;
 		others = new ArrayList<AgentModel>();
 		perceptContainer = new Percept();
+		batch.setPercept(perceptContainer);
 		explored = false;
-		goldSpots = new ArrayList<Vertex>();
-		chestSpots = new ArrayList<Vertex>();
-		safeSpots = new ArrayList<Vertex>();
+		goldSpots = new ArrayList<GridCell>();
+		chestSpots = new ArrayList<GridCell>();
+		safeSpots = new ArrayList<GridCell>();
 		otherAgentIDs = new ArrayList<Integer>();
 	}
 
 	////////////////
 	/// Literals ///
 	////////////////
-	/** Check for a pit. Returns true if there is one for certain or otherwise false (so false is also unknown). */
-	private boolean hasPit(int x, int y){
-		if(world[x][y].hasPit()) return true; // Already determined.
-		if(!world[x][y].canHavePit()) return false;
-		return false;
-	}
-
 	/** Check for the wumpus. Returns true if there is one for certain or otherwise false (so false is also unknown). */
 	private boolean hasWumpus(int x, int y){
-		if(!inWorld(x, y)) return false;								// Location is ouside of the world
-		if(world[x][y].hasWumpus()) return true;						// Already determined the wumpus is here
-		if(!world[x][y].canHaveWumpus()) return false;					// Already determined the wumpus cannot be here
-		if(foundWumpus && (x!= wumpusX || y!=wumpusY)) return false;	// Found the wumpus elsewhere
-		if(foundWumpus && (x== wumpusX && y==wumpusY)) return true;		// Found the wumpus here
-
-		// Look at the neighboring cells and see whether (x,y) is the only viable spot for the wumpus.
-		List<GridCell> newIntersection;
-		List<GridCell> intersection = new ArrayList<GridCell>();
-		List<GridCell> candidates = new ArrayList<GridCell>();
-		boolean first = true;
-		// The wumpus' location is known if either 2 adjacent stenches are smelled, or there is a stench s.t. (x,y) is the only candidate.
-		for(int[] d : delta){ //For each adjacent spot if there is a stench then we'll check what the candidate spots for the wumpus are.
-			int dX = x+d[0];
-			int dY = y+d[1];
-			if(inWorld(dX, dY)&&world[dX][dY].hasStench()){
-				for(int[] d2 : delta){
-					int dX2 = dX+d2[0];
-					int dY2 = dY+d2[1];
-					if(inWorld(dX2, dY2)&&world[dX2][dY2].canHaveWumpus())
-						candidates.add(world[dX2][dY2]);
-				}
-				if(first){
-					intersection.addAll(candidates);
-					first = false;
-				} else {
-					newIntersection = new ArrayList<GridCell>();
-					for(GridCell g : intersection)
-						if(candidates.contains(g))
-							newIntersection.add(g);
-					intersection = newIntersection;
-				}
-				candidates.clear();
-			}
-		}
-		// If the candidate intersection is singular and (x,y) then the wumpus is found.
-		if(intersection.size()==1 && intersection.get(0).getX()==x && intersection.get(0).getY()==y){
-			foundWumpus = true;
-			wumpusX = x;
-			wumpusY = y; 
-			return true;
-		}
-
-		return false;
+		if(beliefs.get(BeliefPlanes.WUMPUS, x, y)) return true;				// Already determined the wumpus is here
+		if(!beliefs.get(BeliefPlanes.CAN_HAVE_WUMPUS, x, y)) return false;		// Already determined the wumpus cannot be here
+		return foundWumpus && x == wumpusX && y == wumpusY;					// Found the wumpus here
 	}
 
 	// Some other literals
@@ -112,46 +102,80 @@ public class WumpusContext extends Context {
 	public boolean isExplored(){ return explored; }
 	public boolean holdsGold(){ return me.holdsGold(); }
 	public boolean foundWumpus(){ return foundWumpus; }
+	public boolean isAlive(AgentInstantiation myInstantiation){ return agentInterface.isAlive(myInstantiation); }
 
 	///////////////
 	/// Actions ///
 	///////////////
-	/** Perceive the location where the agent is currently standing. */
+	/** 
+	 * Perceive the location where the agent is currently standing. If the last route batch already perceived it, then
+	 * that percept is used instead of perceiving again.
+	 */
 	public void perceive(AgentInstantiation myInstantiation){
-		agentInterface.perceive(myInstantiation, perceptContainer); 
+		if(!perceived) agentInterface.perceive(myInstantiation, perceptContainer); 
+		perceived = false;
+		located = true;
 		processPercept();
 		updateBelievedWorld(myInstantiation);
-		agentInterface.showBelief(world, me, others, myInstantiation);
 	}
 
 	/** Move up/down/left/right. */
 	public boolean move(AgentInstantiation myInstantiation, int direction){
 		boolean r = agentInterface.move(myInstantiation, direction);
+		perceived = located = false;
 		updateBelievedWorld(myInstantiation);
 		return r;
 	}
 
+	/**
+	 * Follow the planned route as one batch of moves. The batch stops at the first cell of the route that the agent has
+	 * not visited, because that cell has new percepts. The environment perceives it as part of the batch, and the 
+	 * percept and the moves are processed with one update of the beliefs afterwards. A wumpus that is found this way is
+	 * announced, and so is a visited spot on the way. The spot at the end of the route is announced by the strategy 
+	 * that chose it.
+	 * @return The number of cells that the agent moved.
+	 */
+	public int followRoute(AgentInstantiation myInstantiation){
+		boolean found = foundWumpus;
+		batch.clear();
+		for(int i = 0, from = paths.getSource(); i < route.getRemainingSteps(); i++){
+			int next = route.getNext(i);
+			batch.addMove(WumpusPathPlanner.direction(paths, from, next), !beliefs.get(BeliefPlanes.VISITED, next/height, next%height));
+			from = next;
+		}
+		agentInterface.act(myInstantiation, batch);
+		for(int i = 0; i < batch.getPerformed(); i++) route.advance();
+		perceived = batch.isPerceived();
+		if(perceived) processPercept();
+		if(batch.getPerformed() > 0) located = perceived;					// A percept holds the new position
+		updateBelievedWorld(myInstantiation);
+		if(!found && foundWumpus) announceWumpus(myInstantiation);
+		if(perceived && batch.getStopReason() == ActionBatch.PERCEPT) announceVisitedSpot(myInstantiation);
+		return batch.getPerformed();
+	}
+
 	/** Try to grab gold. */
 	public void grab(AgentInstantiation myInstantiation){
 		me.setHoldsGold(agentInterface.gripper(myInstantiation,false));
-		world[me.getX()][me.getY()].setGold(false);
-		Vertex toRemove = null;  
-		for(Vertex v : goldSpots){
-			GridCell g = (GridCell)v;
-			if(g.getX()==me.getX()&&g.getY()==me.getY()) toRemove = v;
-		}
-		if(toRemove!=null) goldSpots.remove(toRemove);
-		agentInterface.showBelief(world, me, others, myInstantiation);
+		perceived = false;													// The glitter changed
+		GridCell cell = getCell(me.getX(), me.getY());
+		cell.setGold(false);
+		goldSpots.remove(cell);
+		markChanged(me.getX()*height+me.getY());
+		showBelief(myInstantiation);
 	}
 
 	/** Drop gold. */
 	public void drop(AgentInstantiation myInstantiation){
 		me.setHoldsGold(!agentInterface.gripper(myInstantiation,true));
-		if(!world[me.getX()][me.getY()].hasChest()){ 
-			world[me.getX()][me.getY()].setGold(true);
-			goldSpots.add(world[me.getX()][me.getY()]);
+		perceived = false;
+		GridCell cell = getCell(me.getX(), me.getY());
+		if(!cell.hasChest()){ 
+			cell.setGold(true);
+			goldSpots.add(cell);
+			markChanged(me.getX()*height+me.getY());
 		}
-		agentInterface.showBelief(world, me, others, myInstantiation);
+		showBelief(myInstantiation);
 	}
 
 	/** Announces the presence of yourself. */
@@ -167,118 +191,429 @@ public class WumpusContext extends Context {
 		}
 	}
 
-	/** Announce a spot that is visited (to let others know it's a safe spot. */ 
+	/** 
+	 * Announce a spot that is visited (to let others know it's a safe spot). Agents that are not interested in the spot
+	 * get it with the next summary.
+	 */ 
 	public void announceVisitedSpot(AgentInstantiation myInstantiation){
 		for(int i : otherAgentIDs){
-			if(i != myInstantiation.getID())
+			if(i == myInstantiation.getID()) continue;
+			if(agentInterface.isInterested(i, me.getX(), me.getY()))
 				myInstantiation.getMessenger().sendMessage(myInstantiation.getID(), i, new KnowledgeMessage(me.getX(), me.getY(), false, false, false));
+			else {
+				BitSet cells = unsent.get(i);
+				if(cells == null) unsent.put(i, cells = new BitSet());
+				cells.set(me.getX()*height+me.getY());
+			}
+		}
+		if(++announcements % SUMMARY_PERIOD == 0) sendSummaries(myInstantiation);
+	}
+
+	/** Tell the other agents that this agent died where it stands, so that they do not take the same risk. */
+	public void announceDeath(AgentInstantiation myInstantiation){
+		for(int i : otherAgentIDs)
+			if(i != myInstantiation.getID())
+				myInstantiation.getMessenger().sendMessage(myInstantiation.getID(), i, new KnowledgeMessage(me.getX(), me.getY()));
+	}
+
+	/** Send every other agent one summary of the visited spots that it was not told about yet. */
+	public void sendSummaries(AgentInstantiation myInstantiation){
+		for(Map.Entry<Integer, BitSet> e : unsent.entrySet()){
+			BitSet cells = e.getValue();
+			if(cells.isEmpty()) continue;
+			int[] spots = new int[cells.cardinality()*2];
+			for(int c = cells.nextSetBit(0), i = 0; c >= 0; c = cells.nextSetBit(c+1), i += 2){
+				spots[i] = c/height;
+				spots[i+1] = c%height;
+			}
+			myInstantiation.getMessenger().sendMessage(myInstantiation.getID(), e.getKey(), new KnowledgeSummary(spots));
+			cells.clear();
 		}
 	}
 
+	/** Tell other agents which cells this agent is interested in: around its position and the target of its route. */
+	private void updateInterest(AgentInstantiation myInstantiation){
+		int x0 = me.getX(), y0 = me.getY(), x1 = x0, y1 = y0;
+		int target = route.getTarget();
+		if(target >= 0){
+			x0 = Math.min(x0, target/height);
+			x1 = Math.max(x1, target/height);
+			y0 = Math.min(y0, target%height);
+			y1 = Math.max(y1, target%height);
+		}
+		agentInterface.setInterest(myInstantiation, Math.max(0, x0-INTEREST_MARGIN), Math.max(0, y0-INTEREST_MARGIN), 
+				Math.min(width-1, x1+INTEREST_MARGIN), Math.min(height-1, y1+INTEREST_MARGIN));
+	}
+
 	////////////////////////////////
 	/// Aux. methods for actions ///
 	////////////////////////////////
 
-	private boolean inWorld(int x, int y){ return x>=0 && x<world.length && y>=0 && y<world[0].length;}
+	private boolean inWorld(int x, int y){ return x>=0 && x<width && y>=0 && y<height;}
 
 	/** Update the belief base according to latest percept (through own perception or communication). */
 	private void processPercept(){
 		int x = perceptContainer.getX();
 		int y = perceptContainer.getY(); 
-		world[x][y].setVisited(true); 
-		world[x][y].setBreeze(perceptContainer.isBreeze());
-		world[x][y].setStench(perceptContainer.isStench());
-		world[x][y].setGold(perceptContainer.isGlitter());
-		if(world[x][y].hasGold() && !goldSpots.contains(world[x][y])) goldSpots.add(world[x][y]);
-		world[x][y].setChest(perceptContainer.isChest());
-		if(world[x][y].hasChest() && !chestSpots.contains(world[x][y])) chestSpots.add(world[x][y]);
+		GridCell cell = getCell(x, y);
+		boolean changed = !cell.isVisited() || cell.hasBreeze() != perceptContainer.isBreeze() || cell.hasStench() != perceptContainer.isStench();
+		cell.setVisited(true); 
+		cell.setBreeze(perceptContainer.isBreeze());
+		cell.setStench(perceptContainer.isStench());
+		if(changed){
+			markDirty(x, y);
+			if(!foundWumpus) locator.perceived(x, y);
+		}
+		cell.setAgents(perceptContainer.getAgentAmount()-1);	// Other agents than oneself
+		if(cell.hasGold() != perceptContainer.isGlitter() || cell.hasChest() != perceptContainer.isChest()) markChanged(x*height+y);
+		cell.setGold(perceptContainer.isGlitter());
+		if(cell.hasGold() && !goldSpots.contains(cell)) goldSpots.add(cell);
+		cell.setChest(perceptContainer.isChest());
+		if(cell.hasChest() && !chestSpots.contains(cell)) chestSpots.add(cell);
 	} 
 
 	/**
 	 * Updates the spots that are deemed safe.
 	 * Updates the connectivity between spots for path planning. 
 	 * Updates the distances from the agent to reachable spots.
+	 * 
+	 * Only the cells that changed since the last update (the dirty cells) and their surroundings are reconsidered. 
+	 * Cells whose beliefs change because of this are added to the dirty list as well. The outcome is the same as that
+	 * of reconsidering every cell of the world, including the order of the safe spots.
 	 */
 	private void updateBelievedWorld(AgentInstantiation myInstantiation){
-		for(int x = 0; x < world.length; x++)
-			for(int y = 0; y < world[0].length; y++){
-				if(foundWumpus && !hasWumpus(x, y)) world[x][y].setCanHaveWumpus(false);
-				if(world[x][y].isVisited()){ 
-					if(!world[x][y].hasBreeze())
-						for(int[] d : delta)
-							if(inWorld(x+d[0],y+d[1])) world[x+d[0]][y+d[1]].setCanHavePit(false);
-					if(!world[x][y].hasStench())
-						for(int[] d : delta)
-							if(inWorld(x+d[0],y+d[1])) world[x+d[0]][y+d[1]].setCanHaveWumpus(false);
-				}
+		int words = beliefs.getWords();
+		if(foundWumpus && sweptWumpus != wumpusX*height+wumpusY){ // Newly found wumpus, rule it out everywhere else once
+			int w = wumpusY>>>6;
+			for(int x = 0; x < width; x++)
+				for(int i = 0; i < words; i++)
+					markDirty(x, i, beliefs.retain(BeliefPlanes.CAN_HAVE_WUMPUS, BeliefPlanes.WUMPUS, x, i, x == wumpusX && i == w ? 1L<<wumpusY : 0));
+			sweptWumpus = wumpusX*height+wumpusY;
+		}
+		int sources = dirtyAmount;
+		for(int i = 0; i < sources; i++){ // Draw the conclusions again for the words of and next to a changed cell
+			int x = dirty[i]/height, y = dirty[i]%height, w = y>>>6;
+			if(foundWumpus && !hasWumpus(x, y)) ruleOutWumpus(x, y);
+			ruleOutNextTo(x, w);
+			if(x > 0) ruleOutNextTo(x-1, w);
+			if(x < width-1) ruleOutNextTo(x+1, w);
+			if((y&63) == 0 && w > 0) ruleOutNextTo(x, w-1);
+			if((y&63) == 63 && w < words-1) ruleOutNextTo(x, w+1);
+		}
+		if(!foundWumpus){
+			int wumpus = locator.locate();
+			if(wumpus >= 0){ 
+				foundWumpus = true;
+				wumpusX = wumpus/height;
+				wumpusY = wumpus%height;
+				markChanged(wumpus);
 			}
-		safeSpots.clear(); // Otherwise visited spots stay here
-		for(int x = 0; x < world.length; x++)
-			for(int y = 0; y < world[0].length; y++){ 
-				world[x][y].setWumpus(hasWumpus(x,y)); 
-				world[x][y].setSafe(!world[x][y].isVisited() && !world[x][y].canHavePit() && !world[x][y].canHaveWumpus()); // The visited check is to differentiate between unexplored and explored safe spots
-				if(world[x][y].isSafe()){ // If the node is found to be safe
-					safeSpots.add(world[x][y]);
-				}
-				world[x][y].setPit(hasPit(x,y)); 
+		}
+		if(foundWumpus) beliefs.set(BeliefPlanes.WUMPUS, wumpusX, wumpusY, hasWumpus(wumpusX, wumpusY));
+		for(int i = 0; i < dirtyAmount; i++){ // The safety of a cell only depends on its own beliefs
+			int x = dirty[i]/height, y = dirty[i]%height;
+			boolean safe = !beliefs.get(BeliefPlanes.VISITED, x, y) && !beliefs.get(BeliefPlanes.CAN_HAVE_PIT, x, y) && 
+					!beliefs.get(BeliefPlanes.CAN_HAVE_WUMPUS, x, y); // The visited check is to differentiate between unexplored and explored safe spots
+			if(safe != beliefs.get(BeliefPlanes.SAFE, x, y)){
+				beliefs.set(BeliefPlanes.SAFE, x, y, safe);
+				int index = safeSpotIndex(dirty[i]);
+				if(safe) safeSpots.add(-index-1, getCell(x, y));
+				else safeSpots.remove(index);
 			}
+		}
 		updateConnectivityGraph();
-		agentInterface.positionUpdate(myInstantiation, perceptContainer);
+		for(int i = 0; i < dirtyAmount; i++) risk.invalidate(dirty[i]);
+		for(int i = 0; i < dirtyAmount; i++) isDirty.clear(dirty[i]);
+		dirtyAmount = 0;
+		if(!located) agentInterface.positionUpdate(myInstantiation, perceptContainer);
+		located = true;
 		int x = perceptContainer.getX();  
 		int y = perceptContainer.getY();
 		me.setPosition(x,y); 
-		Dijkstra.dijkstra(arrayForm, world[me.getX()][me.getY()]); // Updates the distances from current position to all reachable spots	
-		agentInterface.showBelief(world, me, others, myInstantiation);
+		paths.setSource(paths.cell(x, y)); // The distances from the current position are searched when they are needed
+		updateInterest(myInstantiation);
+		showBelief(myInstantiation);
 	} 
 
-	/** Update the connectivity graph for path planning. */
+	/** Show the beliefs about the cells that changed since they were last shown. */
+	private void showBelief(AgentInstantiation myInstantiation){
+		agentInterface.showBelief(beliefs, me, unpublished, unpublishedAmount, myInstantiation);
+		for(int i = 0; i < unpublishedAmount; i++) isUnpublished.clear(unpublished[i]);
+		unpublishedAmount = 0;
+	}
+
+	/** A visited cell without a breeze (stench) has no pit (wumpus) next to it. Applied to one word of cells. */
+	private void ruleOutNextTo(int x, int w){
+		long wumpus = beliefs.ruleOutNextTo(BeliefPlanes.STENCH, BeliefPlanes.CAN_HAVE_WUMPUS, x, w);
+		markDirty(x, w, beliefs.ruleOutNextTo(BeliefPlanes.BREEZE, BeliefPlanes.CAN_HAVE_PIT, x, w) | wumpus);
+		if(!foundWumpus)
+			for(; wumpus != 0; wumpus &= wumpus-1)
+				locator.possibilityChanged(x, (w<<6)+Long.numberOfTrailingZeros(wumpus));
+	}
+
+	private void ruleOutWumpus(int x, int y){
+		if(!beliefs.get(BeliefPlanes.CAN_HAVE_WUMPUS, x, y)) return;
+		beliefs.set(BeliefPlanes.CAN_HAVE_WUMPUS, x, y, false);
+		markDirty(x, y);
+	}
+
+	/**
+	 * Find the frontier cell with the lowest chance of death that the agent can reach.
+	 * @param threshold The highest chance of death that is acceptable.
+	 * @return The cell, or null if there is no reachable frontier cell within the threshold.
+	 */
+	public GridCell leastRiskyCell(double threshold){
+		int cell = risk.leastRisky(paths, threshold);
+		return cell < 0 ? null : getCell(cell/height, cell%height);
+	}
+
+	/** Allow path planning through an unsafe frontier cell, so that the agent can enter it. Only one cell at a time. */
+	public void venture(GridCell g){
+		if(ventured >= 0) paths.setTraversable(ventured, beliefs.get(BeliefPlanes.SAFE, ventured/height, ventured%height) || 
+				beliefs.get(BeliefPlanes.VISITED, ventured/height, ventured%height));
+		ventured = g.getX()*height+g.getY();
+		paths.setTraversable(ventured, true);
+	}
+
+	/** Binary search for a cell in the safe spots, which are ordered by x and then y. Returns -(insertion point)-1 if absent. */
+	private int safeSpotIndex(int cell){
+		int low = 0, high = safeSpots.size()-1;
+		while(low <= high){
+			int mid = (low+high)>>>1;
+			GridCell g = safeSpots.get(mid);
+			int c = g.getX()*height+g.getY();
+			if(c < cell) low = mid+1;
+			else if(c > cell) high = mid-1;
+			else return mid;
+		}
+		return -low-1;
+	}
+
+	/** Update which cells are traversable for path planning. Only dirty cells can have changed. */
 	private void updateConnectivityGraph(){ 
-		for(int x = 0; x < world.length; x++)
-			for(int y = 0; y < world[0].length; y++)
-				if(world[x][y].isSafe()||world[x][y].isVisited())
-					for(int[] d : delta){ // For each direction
-						if(inWorld(x+d[0],y+d[1])){ // If in the world
-							GridCell neighbor = world[x+d[0]][y+d[1]]; 
-							if(neighbor.isSafe()||neighbor.isVisited()){ // If the neighbor is traversable add it
-								if(!neighbor.getNeighbors().contains(world[x][y]))
-									neighbor.getNeighbors().add(world[x][y]); 
-								if(!world[x][y].getNeighbors().contains(neighbor))
-									world[x][y].getNeighbors().add(neighbor);
-							}
-						}
-					} 
-		
+		for(int i = 0; i < dirtyAmount; i++){
+			int x = dirty[i]/height, y = dirty[i]%height;
+			paths.setTraversable(dirty[i], beliefs.get(BeliefPlanes.SAFE, x, y) || beliefs.get(BeliefPlanes.VISITED, x, y));
+			if(route.isOnRoute(dirty[i])) route.clear();		// Replan when the remaining route or its target changed
+		}
+	}
+
+	/** Mark the cells of a word that are given as bits as dirty. */
+	private void markDirty(int x, int w, long bits){
+		for(; bits != 0; bits &= bits-1)
+			markDirty(x, (w<<6)+Long.numberOfTrailingZeros(bits));
+	}
+
+	/** Remember that the beliefs about a cell changed, so that the next update reconsiders it. */
+	private void markDirty(int x, int y){
+		int cell = x*height+y;
+		if(isDirty.get(cell)) return;
+		isDirty.set(cell);
+		if(dirtyAmount == dirty.length) dirty = Arrays.copyOf(dirty, dirtyAmount*2);
+		dirty[dirtyAmount++] = cell;
+		markChanged(cell);
+	}
+
+	/** Remember that a cell has to be shown and traced again. Dirty cells are changed as well. */
+	private void markChanged(int cell){
+		if(!isUnpublished.get(cell)){
+			isUnpublished.set(cell);
+			if(unpublishedAmount == unpublished.length) unpublished = Arrays.copyOf(unpublished, unpublishedAmount*2);
+			unpublished[unpublishedAmount++] = cell;
+		}
+		if(!isUntraced.get(cell)){
+			isUntraced.set(cell);
+			if(untracedAmount == untraced.length) untraced = Arrays.copyOf(untraced, untracedAmount*2);
+			untraced[untracedAmount++] = cell;
+		}
 	}
 
 	/** Set the believed wumpus location. Used after a wumpus announcement is received. */
 	public void setWumpus(AgentInstantiation myInstantiation, int x, int y){
+		setWumpus(x, y);
+		updateBelievedWorld(myInstantiation);
+	}
+
+	private void setWumpus(int x, int y){
 		foundWumpus = true;
 		wumpusX = x;
 		wumpusY = y;
-		world[x][y].setCanHaveWumpus(true);
-		world[x][y].setWumpus(true);
+		beliefs.set(BeliefPlanes.CAN_HAVE_WUMPUS, x, y, true);
+		beliefs.set(BeliefPlanes.WUMPUS, x, y, true);
+		markDirty(x, y);
+	}
+
+	/** 
+	 * Process that another agent died at a location. Unless it is where the wumpus is believed to be, the location is 
+	 * believed to have a pit, so that its risk is certain death.
+	 */
+	public void addDeath(AgentInstantiation myInstantiation, int x, int y){
+		if(!hasWumpus(x, y) && !beliefs.get(BeliefPlanes.PIT, x, y)){
+			beliefs.set(BeliefPlanes.CAN_HAVE_PIT, x, y, true);
+			beliefs.set(BeliefPlanes.PIT, x, y, true);
+			markDirty(x, y);
+		}
 		updateBelievedWorld(myInstantiation);
 	}
 
 	/** Process information into the believed state. Used after an agent announce a safe spot and/or the wumpus. */
 	public void addInfo(AgentInstantiation myInstantiation, int x, int y, boolean canHaveWumpus, boolean canHavePit){
-		world[x][y].setCanHaveWumpus(canHaveWumpus);
-		world[x][y].setCanHavePit(canHavePit);
+		setInfo(x, y, canHaveWumpus, canHavePit);
+		updateBelievedWorld(myInstantiation);
+	}
+
+	/** Process a summary of safe spots and the wumpus into the believed state, with one update for all of them. */
+	public void addInfo(AgentInstantiation myInstantiation, KnowledgeSummary summary){
+		if(summary.hasWumpus()) setWumpus(summary.getWumpusX(), summary.getWumpusY());
+		for(int i = 0; i < summary.getAmount(); i++) setInfo(summary.getX(i), summary.getY(i), false, false);
 		updateBelievedWorld(myInstantiation);
 	}
 
+	private void setInfo(int x, int y, boolean canHaveWumpus, boolean canHavePit){
+		GridCell cell = getCell(x, y);
+		boolean wumpusChanged = cell.canHaveWumpus() != canHaveWumpus;
+		if(wumpusChanged || cell.canHavePit() != canHavePit) markDirty(x, y);
+		cell.setCanHaveWumpus(canHaveWumpus);
+		cell.setCanHavePit(canHavePit);
+		if(wumpusChanged && !foundWumpus) locator.possibilityChanged(x, y);
+	}
+
 	////////////
 	/// Misc ///
 	////////////
-	public void addOtherAgent(int i){ otherAgentIDs.add(i); }
-	public GridCell getCell(int x, int y){ return world[x][y]; }
+	public void addOtherAgent(int i){ if(!otherAgentIDs.contains(i)) otherAgentIDs.add(i); }
+	public GridCell getCell(int x, int y){ return new GridCell(beliefs, x, y); }
 	public void setID(int id){ me.setID(id); }
 	public int getID(){return me.getID(); }
 	public void setExplored(boolean b){ explored = b; }
 	public void setPursuingClearWorldGoal(boolean b){ this.pursuingClearWorldGoal = b; }
 	public boolean getPursuingClearWorldGoal(){ return pursuingClearWorldGoal; }
-	public List<Vertex> getSafeSpots(){ return safeSpots; }
-	public List<Vertex> getChestSpots(){ return chestSpots; }
-	public List<Vertex> getGoldSpots(){ return goldSpots; }
-	public void toJSON(StringBuffer r){ r.append("\"not implemented yet\""); }
+	public List<GridCell> getSafeSpots(){ return safeSpots; }
+	public List<GridCell> getChestSpots(){ return chestSpots; }
+	public List<GridCell> getGoldSpots(){ return goldSpots; }
+	public GridPathEngine getPaths(){ return paths; }
+	public GridRoute getRoute(){ return route; }
+	public RiskEstimator getRiskEstimator(){ return risk; }
+	/** Set the chance of a pit per cell that the risk estimates assume, also after a checkpoint is restored. */
+	public void setPitPrior(double pitPrior){
+		this.pitPrior = pitPrior;
+		risk.setPitPrior(pitPrior);
+	}
+	/** Distance from the agent's position over traversable cells, <code>Integer.MAX_VALUE</code> if unreachable. */
+	public int getDistance(GridCell g){ return paths.getDistance(paths.cell(g.getX(), g.getY())); }
+
+	/**
+	 * Write the beliefs of the agent for a checkpoint: the believed world, the agent's position and gold, whether it 
+	 * explored everything, the wumpus, the spots and the other agents. Goals, plans and routes are not beliefs and are 
+	 * not written.
+	 */
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		out.writeInt(width);
+		out.writeInt(height);
+		beliefs.write(out);
+		out.writeInt(me.getX());
+		out.writeInt(me.getY());
+		out.writeBoolean(me.holdsGold());
+		out.writeBoolean(explored);
+		out.writeBoolean(foundWumpus);
+		out.writeInt(wumpusX);
+		out.writeInt(wumpusY);
+		writeSpots(out, goldSpots);
+		writeSpots(out, chestSpots);
+		writeSpots(out, safeSpots);
+		out.writeInt(otherAgentIDs.size());
+		for(int i : otherAgentIDs) out.writeInt(i);
+	}
+
+	/**
+	 * Replace the beliefs by those of a checkpoint of an agent in a world of the same dimensions. What is derived from 
+	 * the beliefs, such as the traversable cells and the wumpus candidates, is rebuilt. The agent has no route and is 
+	 * not pursuing the clear world goal afterwards, because its plans are not restored.
+	 */
+	public void readCheckpoint(DataInput in) throws IOException {
+		if(in.readInt() != width || in.readInt() != height) throw new IOException("The checkpoint is of a world with other dimensions");
+		beliefs.read(in);
+		me.setPosition(in.readInt(), in.readInt());
+		perceived = located = false;
+		me.setHoldsGold(in.readBoolean());
+		explored = in.readBoolean();
+		foundWumpus = in.readBoolean();
+		wumpusX = in.readInt();
+		wumpusY = in.readInt();
+		readSpots(in, goldSpots);
+		readSpots(in, chestSpots);
+		readSpots(in, safeSpots);
+		otherAgentIDs.clear();
+		for(int i = in.readInt(); i > 0; i--) otherAgentIDs.add(in.readInt());
+		locator = new WumpusLocator(beliefs);
+		risk = new RiskEstimator(beliefs);
+		risk.setPitPrior(pitPrior);
+		for(int x = 0; x < width; x++)
+			for(int y = 0; y < height; y++){
+				boolean visited = beliefs.get(BeliefPlanes.VISITED, x, y);
+				paths.setTraversable(x*height+y, visited || beliefs.get(BeliefPlanes.SAFE, x, y));
+				if(visited && !foundWumpus) locator.perceived(x, y);
+			}
+		paths.setSource(paths.cell(me.getX(), me.getY()));
+		route.clear();
+		ventured = -1;
+		sweptWumpus = -1;
+		pursuingClearWorldGoal = false;
+	}
+
+	private void writeSpots(DataOutput out, List<GridCell> spots) throws IOException {
+		out.writeInt(spots.size());
+		for(GridCell g : spots) out.writeInt(g.getX()*height+g.getY());
+	}
+
+	private void readSpots(DataInput in, List<GridCell> spots) throws IOException {
+		spots.clear();
+		for(int i = in.readInt(); i > 0; i--){
+			int cell = in.readInt();
+			spots.add(getCell(cell/height, cell%height));
+		}
+	}
+
+	/**
+	 * Write the beliefs that changed since the previous trace to a trace record: the agent's position, whether it holds 
+	 * gold, the wumpus location and the beliefs about the cells that changed. The cells stay changed until 
+	 * {@link #traced()} is called, so that they are written again with the next record if this one is dropped.
+	 */
+	public void trace(TraceRecord r){
+		r.width = width;
+		r.height = height;
+		r.x = me.getX();
+		r.y = me.getY();
+		r.holdsGold = me.holdsGold();
+		if(foundWumpus){
+			r.wumpusX = wumpusX;
+			r.wumpusY = wumpusY;
+		}
+		for(int i = 0; i < untracedAmount; i++) 
+			r.addChange(untraced[i], beliefs.getAll(untraced[i]/height, untraced[i]%height));
+	}
+
+	/** Register that the last trace record (or JSON) was accepted, so its changed cells do not have to be written again. */
+	public void traced(){ clearUntraced(); }
+
+	/** 
+	 * The same as {@link #trace(TraceRecord)}, but as JSON. Beliefs are given as in BeliefPlanes.getAll(x,y). The cells
+	 * also stay changed until {@link #traced()} is called.
+	 */
+	public void toJSON(StringBuffer r){
+		r.append("{\"X\": "+me.getX()+", \"Y\": "+me.getY()+", \"HoldsGold\": "+me.holdsGold()+", \"Wumpus\": ");
+		r.append(foundWumpus ? "["+wumpusX+", "+wumpusY+"]" : "null");
+		r.append(", \"Changed\": [");
+		for(int i = 0; i < untracedAmount; i++){
+			int x = untraced[i]/height, y = untraced[i]%height;
+			if(i > 0) r.append(", ");
+			r.append("{\"X\": "+x+", \"Y\": "+y+", \"Beliefs\": "+beliefs.getAll(x, y)+"}");
+		}
+		r.append("]}");
+	}
+
+	private void clearUntraced(){
+		for(int i = 0; i < untracedAmount; i++) isUntraced.clear(untraced[i]);
+		untracedAmount = 0;
+	}
 }
@@ -0,0 +1,133 @@
+package agentcore;
+
+import java.util.Arrays;
+/**
+ * Localization of the wumpus from the stenches that an agent smelled. For every stench the number of neighboring cells
+ * that can still have the wumpus is kept up to date. The wumpus is at a cell if it is the only cell that can have the
+ * wumpus next to all stenches around it. This is the case if a stench next to the cell has only one candidate left, or
+ * if the stenches around the cell have no other common neighbor that can have the wumpus.
+ *
+ * Only cells next to a stench whose candidates changed can become the only candidate, so those are the only cells
+ * that are checked. Nothing is allocated after the first few stenches.
+ *
+ * @author Bas Testerink
+ */
+public class WumpusLocator {
+	private static final int[][] delta = new int[][]{{-1,0},{1,0},{0,-1},{0,1}}; // To loop through neighboring coordinates
+	private BeliefPlanes beliefs;							// Beliefs of the agent
+	private int width, height;								// Dimensions of the world
+	private int[] stenches = new int[4], counts = new int[4]; // Smelled stenches (x*height+y) and their numbers of candidates
+	private int stenchAmount;								// Number of smelled stenches
+	private int[] pending = new int[16];					// Cells to check at the next localization (x*height+y)
+	private int pendingAmount;								// Number of cells to check
+
+	public WumpusLocator(BeliefPlanes beliefs){
+		this.beliefs = beliefs;
+		width = beliefs.getWidth();
+		height = beliefs.getHeight();
+	}
+
+	/** Register the percept of a visited cell, whether there is a stench or not. */
+	public void perceived(int x, int y){
+		int cell = x*height+y, i = indexOf(cell);
+		if(hasStench(x, y)){
+			if(i < 0){
+				if(stenchAmount == stenches.length){
+					stenches = Arrays.copyOf(stenches, stenchAmount*2);
+					counts = Arrays.copyOf(counts, stenchAmount*2);
+				}
+				stenches[stenchAmount] = cell;
+				counts[stenchAmount++] = countCandidates(x, y);
+				addNeighbors(x, y);
+			}
+		} else if(i >= 0){											// The stench is gone, the cells around have fewer stenches
+			stenches[i] = stenches[--stenchAmount];
+			counts[i] = counts[stenchAmount];
+			addNeighbors(x, y);
+		}
+	}
+
+	/** Register that it changed whether a cell can have the wumpus. */
+	public void possibilityChanged(int x, int y){
+		for(int[] d : delta){
+			int sX = x+d[0], sY = y+d[1];
+			if(!inWorld(sX, sY) || !hasStench(sX, sY)) continue;
+			int i = indexOf(sX*height+sY);
+			if(i < 0) continue;
+			int n = countCandidates(sX, sY);
+			if(n != counts[i]){
+				counts[i] = n;
+				addNeighbors(sX, sY);
+			}
+		}
+	}
+
+	/**
+	 * Check the cells next to the stenches that changed since the last call. Cells are checked in the order of x and then y,
+	 * so the first cell of the world that is determined is returned if information is conflicting.
+	 * @return The location of the wumpus as x*height+y, or -1 if it is not determined.
+	 */
+	public int locate(){
+		Arrays.sort(pending, 0, pendingAmount);
+		int r = -1;
+		for(int i = 0; i < pendingAmount && r < 0; i++)
+			if((i == 0 || pending[i] != pending[i-1]) && isOnlyCandidate(pending[i]/height, pending[i]%height))
+				r = pending[i];
+		pendingAmount = 0;
+		return r;
+	}
+
+	/** Whether a cell is the only cell that can have the wumpus next to all stenches around it. */
+	private boolean isOnlyCandidate(int x, int y){
+		if(!beliefs.get(BeliefPlanes.CAN_HAVE_WUMPUS, x, y)) return false;
+		int first = -1;
+		for(int[] d : delta){
+			int sX = x+d[0], sY = y+d[1];
+			if(!inWorld(sX, sY) || !hasStench(sX, sY)) continue;
+			int i = indexOf(sX*height+sY);
+			if(i >= 0 && counts[i] == 1) return true;						// The stench has no other candidate
+			if(first < 0) first = sX*height+sY;
+		}
+		if(first < 0) return false;											// No stench around, so nothing is known
+		int fX = first/height, fY = first%height;
+		for(int[] d : delta){												// Other candidates of one stench must miss another stench
+			int cX = fX+d[0], cY = fY+d[1];
+			if((cX == x && cY == y) || !inWorld(cX, cY) || !beliefs.get(BeliefPlanes.CAN_HAVE_WUMPUS, cX, cY)) continue;
+			if(nextToAllStenches(cX, cY, x, y)) return false;
+		}
+		return true;
+	}
+
+	/** Whether a cell is next to all stenches that are next to another cell. */
+	private boolean nextToAllStenches(int cX, int cY, int x, int y){
+		for(int[] d : delta){
+			int sX = x+d[0], sY = y+d[1];
+			if(inWorld(sX, sY) && hasStench(sX, sY) && Math.abs(sX-cX)+Math.abs(sY-cY) != 1) return false;
+		}
+		return true;
+	}
+
+	/** Number of neighbors of a cell that can have the wumpus. */
+	private int countCandidates(int x, int y){
+		int n = 0;
+		for(int[] d : delta)
+			if(inWorld(x+d[0], y+d[1]) && beliefs.get(BeliefPlanes.CAN_HAVE_WUMPUS, x+d[0], y+d[1])) n++;
+		return n;
+	}
+
+	/** Check the neighbors of a cell at the next localization. */
+	private void addNeighbors(int x, int y){
+		if(pendingAmount+4 > pending.length) pending = Arrays.copyOf(pending, pending.length*2);
+		for(int[] d : delta)
+			if(inWorld(x+d[0], y+d[1])) pending[pendingAmount++] = (x+d[0])*height+y+d[1];
+	}
+
+	private int indexOf(int cell){
+		for(int i = 0; i < stenchAmount; i++)
+			if(stenches[i] == cell) return i;
+		return -1;
+	}
+
+	private boolean hasStench(int x, int y){ return beliefs.get(BeliefPlanes.STENCH, x, y) && beliefs.get(BeliefPlanes.VISITED, x, y); }
+	private boolean inWorld(int x, int y){ return x>=0 && x<width && y>=0 && y<height; }
+}
@@ -2,47 +2,51 @@ package agentcore;
 
 import java.util.ArrayList;
 import java.util.List;
-import pathplanning.Vertex;
+import pathplanning.GridPathEngine;
 
 /**
  * This class contains some auxiliary code for path planning.
- * 
+ *
  * @author Bas Testerink
  */
 
-public class WumpusPathPlanner { 
-	/** Returns the moves to get to a goal. */
-	public static List<Integer> planPath(Vertex goal){
+public class WumpusPathPlanner {
+	/** Returns the moves to get to a goal. The last move of the list is the first one to make. */
+	public static List<Integer> planPath(WumpusContext context, GridCell goal){
 		ArrayList<Integer> plan = new ArrayList<Integer>();
-		if(goal.getDistance() > 0 && goal.getDistance() < Integer.MAX_VALUE){
-			Vertex to = goal; 
-			Vertex from = nearestSpot(goal.getNeighbors()); 
-			while(to != null){
-				GridCell fromG = (GridCell)from;
-				GridCell toG = (GridCell)to; 
-				if(fromG.getX() > toG.getX()) plan.add(WumpusConstants.LEFT);
-				else if(fromG.getX() < toG.getX()) plan.add(WumpusConstants.RIGHT);
-				else if(fromG.getY() > toG.getY()) plan.add(WumpusConstants.DOWN);
-				else if(fromG.getY() < toG.getY()) plan.add(WumpusConstants.UP);
-				
-				if(from.getDistance() == 0) to = null;
-				else {
-					to = from;
-					from = nearestSpot(from.getNeighbors());
-				}
+		GridPathEngine paths = context.getPaths();
+		int to = paths.cell(goal.getX(), goal.getY());
+		int distance = paths.getDistance(to);
+		if(distance > 0 && distance < Integer.MAX_VALUE){
+			for(int from = paths.getPrevious(to); from != -1; from = paths.getPrevious(from)){ // Walk back to the agent
+				plan.add(direction(paths, from, to));
+				to = from;
 			}
 		}
-		
+
 		return plan;
 	}
-	
-	/** Returns the nearest vertex of a given list. */
-	public static Vertex nearestSpot(List<Vertex> spots){
-		Vertex min = null;
-		for(int i = 0; i < spots.size(); i++)
-			if(spots.get(i).getDistance()!=Integer.MAX_VALUE &&
-			   (min==null || min.getDistance() > spots.get(i).getDistance()))
+
+	/** Returns the move from a cell to a neighboring cell. */
+	public static int direction(GridPathEngine paths, int from, int to){
+		int difference = to-from;
+		if(difference == -paths.getHeight()) return WumpusConstants.LEFT;
+		else if(difference == paths.getHeight()) return WumpusConstants.RIGHT;
+		else if(difference == -1) return WumpusConstants.DOWN;
+		else return WumpusConstants.UP;
+	}
+
+	/** Returns the nearest reachable cell of a given list. */
+	public static GridCell nearestSpot(WumpusContext context, List<GridCell> spots){
+		GridCell min = null;
+		int minDistance = Integer.MAX_VALUE;
+		for(int i = 0; i < spots.size(); i++){
+			int distance = context.getDistance(spots.get(i));
+			if(distance < minDistance){
 				min = spots.get(i);
+				minDistance = distance;
+			}
+		}
 		return min;
 	}
 }
@@ -1,81 +1,232 @@
 package environment;
  
-import java.util.HashMap;
-import java.util.List;
+import java.util.BitSet;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import triggers.AgentAnnouncement;
+import agentcore.ActionBatch;
 import agentcore.AgentInstantiation;
 import agentcore.AgentModel;
-import agentcore.GridCell;
+import agentcore.BeliefPlanes;
 import agentcore.Percept;
 import agentcore.WumpusConstants;
 /**
- * This class implements the agents' interface to the environment.
+ * This class implements the agents' interface to the environment. Changes are reported to an observer (normally the
+ * WumpusGUI). Without an observer the interface runs headless: nothing is drawn and moves do not wait for animations.
+ * 
+ * The environment has a single writer. Agents do not call the Wumpus world themselves, but put a command on a lock-free
+ * queue and wait for its result. The thread that holds the writer role applies all queued commands in one go, also
+ * those of other agents, and wakes their agents. Any agent thread that finds the role free takes it, so commands are
+ * applied without a separate environment thread, one at a time and in the order in which they were queued. Results
+ * such as failure messages are read right after each command by the writer, so they are never overwritten by the
+ * action of another agent. Waiting for the animation of moves happens after a command is done, on the thread of the
+ * agent that moved, so agents do not wait for each other's animations.
  * 
  * @author Bas Testerink
  */
 public class AgentInterface {
 	private Wumpus env;
-	private WumpusGUI gui;
+	private WumpusObserver observer;						// Observer of the world, null when running headless
 	private Map<AgentInstantiation, Integer> agents;		// Internal agents
-	private boolean[] freespots;							// Agent positions that are free
+	private ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<Command>(); // Commands that wait to be applied
+	private AtomicBoolean writing = new AtomicBoolean();	// Whether a thread holds the writer role
+	private AtomicInteger moves = new AtomicInteger();		// Number of move actions performed, for experiment statistics
+	private int stepped;									// Moves attempted by the current command, only used by the writer
+	private BitSet shownBeliefs = new BitSet();				// Agents whose believed world at the observer is up to date
+	private Map<Integer, int[]> interests = new ConcurrentHashMap<Integer, int[]>(); // Per agent id the cells it is interested in, as {x0,y0,x1,y1}
 	
-	public AgentInterface(Wumpus env, WumpusGUI gui){
+	public AgentInterface(Wumpus env, WumpusObserver observer){
 		this.env = env;
-		this.gui = gui;
-		agents = new HashMap<AgentInstantiation, Integer>();
-		freespots = new boolean[]{true,true,true,true};
+		this.observer = observer;
+		agents = new ConcurrentHashMap<AgentInstantiation, Integer>();
+	}
+	
+	/** Create a headless interface. */
+	public AgentInterface(Wumpus env){
+		this(env, null);
 	}
 	
 	public int getWorldWidth(){ return env.getWidth(); }
 	public int getWorldHeight(){ return env.getHeight(); }
+	public boolean isHeadless(){ return observer == null; }
+	public int getMoves(){ return moves.get(); }
+	/** Continue counting moves from a number, such as the moves made before a checkpoint. */
+	public void setMoves(int n){ moves.set(n); }
 	
 	/** Grab or drop gold. */
 	public boolean gripper(AgentInstantiation agent, boolean drop){
-		if(!agents.containsKey(agent)) return false;
-		else {
-			int id = agents.get(agent);
-			if(drop){
-				env.drop(id);
-				if(env.getFailedMessage()==null && env.at(env.getX(id), env.getY(id), Wumpus.CHEST))
-					gui.updateMood(id, 2);
-				else gui.updateMood(id, 0);
-			} else {
-				env.grab(id);
-				if(env.getFailedMessage()==null)
-					gui.updateMood(id, 1);
-			}
-			gui.updateRealWorld();
-			return env.getFailedMessage() == null;
-		}
-		
+		Integer id = agents.get(agent);
+		if(id == null) return false;
+		else return submit(new Command(drop ? Command.DROP : Command.GRAB, id, 0, null, null));
 	}
 	
 	/** Move an agent up/down/left/right. */
 	public boolean move(AgentInstantiation agent, int direction){
-		if(!agents.containsKey(agent)) return false;
-		else {
-			int dX = direction==WumpusConstants.LEFT?(-1):(direction==WumpusConstants.RIGHT?1:0);
-			int dY = direction==WumpusConstants.UP?1:(direction==WumpusConstants.DOWN?(-1):0);
-			env.move(agents.get(agent), dX, dY);
-			try{Thread.sleep(400);}catch(Exception e){}					// Allow the animation to finish
-			gui.updateRealWorld();
-			return env.getFailedMessage() == null;
+		Integer id = agents.get(agent);
+		if(id == null) return false;
+		else return submit(new Command(Command.MOVE, id, direction, null, null));
+	}
+
+	/**
+	 * Perform a batch of actions: its moves in order and then its gripper action. The batch stops at the first action
+	 * that fails, and after a move into a cell where the agent wants to perceive, which is perceived right away if the
+	 * batch has a percept container. The outcomes are stored in the batch.
+	 * @param agent The agent that acts.
+	 * @param batch The actions to perform.
+	 * @return Whether all actions were performed.
+	 */
+	public boolean act(AgentInstantiation agent, ActionBatch batch){
+		batch.clearOutcomes();
+		Integer id = agents.get(agent);
+		if(id == null){
+			batch.stop(ActionBatch.FAILED, "Agent is not registered.");
+			return false;
 		}
+		return submit(new Command(Command.ACT, id, 0, batch, null));
 	}
-	
-	/** Register an agent. Returns -1 if there are no free spots left. */
-	public synchronized int registerAgent(AgentInstantiation agent){  
-		if(agents.size()==WumpusConstants.MAXAGENTAMOUNT) return -1;
-		else {
-			for(int i = 0; i < WumpusConstants.MAXAGENTAMOUNT; i++)
-				if(freespots[i]){
-					freespots[i] = false;
-					agents.put(agent, i);  
-					return i;
+
+	/** Apply a batch of actions, as the writer. */
+	private boolean applyBatch(int id, ActionBatch batch){
+		int attempted = 0;
+		try{
+			for(int i = 0; i < batch.getMoveAmount(); i++){
+				attempted++;
+				if(!step(id, batch.getMove(i))){
+					batch.stop(ActionBatch.FAILED, env.getFailedMessage());
+					return false;
+				}
+				batch.moved();
+				if(batch.isPerceivedAfter(i) && batch.getPercept() != null && !env.getDeaths()[id]) // The dead perceive nothing
+					batch.setPerceived(applyPerceive(id, batch.getPercept()));
+				if(batch.isPerceivedAfter(i) && i < batch.getMoveAmount()-1){
+					batch.stop(ActionBatch.PERCEPT, null);
+					return false;
 				}
-			return -1; // Cannot be reached
+			}
+		} finally { moves.addAndGet(attempted); }						// Counted once per batch
+		if(batch.getGripper() != ActionBatch.NONE){
+			batch.setGripped(grip(id, batch.getGripper() == ActionBatch.DROP));
+			if(!batch.isGripped()){
+				batch.stop(ActionBatch.FAILED, env.getFailedMessage());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Queue a command and wait until it is applied. The calling thread applies the queued commands itself if no other
+	 * thread holds the writer role.
+	 * @return The result of the command.
+	 */
+	private boolean submit(Command c){
+		commands.offer(c);
+		do{
+			if(writing.compareAndSet(false, true)){
+				try{ applyCommands(); } 
+				finally { writing.set(false); }
+			} else if(!c.done) LockSupport.park(this);				// The writer wakes us when our command is done
+		} while(!c.done || (!commands.isEmpty() && !writing.get())); // Commands queued while the role was taken are not left behind
+		if(observer != null)
+			for(int i = 0; i < c.steps; i++) observer.awaitAnimation(c.id); // Allow the animation of each move to finish
+		return c.result;
+	}
+
+	/** Apply the queued commands, as the writer, and wake the threads that wait for them. */
+	private void applyCommands(){
+		Command c;
+		while((c = commands.poll()) != null){
+			stepped = 0;
+			try{
+				switch(c.type){
+				case Command.MOVE: 
+					moves.incrementAndGet();
+					c.result = step(c.id, c.argument); 
+					break;
+				case Command.GRAB: c.result = grip(c.id, false); break;
+				case Command.DROP: c.result = grip(c.id, true); break;
+				case Command.ACT: c.result = applyBatch(c.id, c.batch); break;
+				case Command.PERCEIVE: c.result = applyPerceive(c.id, c.percept); break;
+				case Command.POSITION: 
+					c.percept.setX(env.getX(c.id));
+					c.percept.setY(env.getY(c.id));
+					c.result = true;
+					break;
+				case Command.ALIVE: c.result = !env.getDeaths()[c.id]; break;
+				case Command.CLEARED: c.result = env.isCleared(); break;
+				case Command.DEATHS:
+					boolean[] dead = env.getDeaths();
+					for(int i = 0; i < c.argument; i++) if(dead[i]) c.amount++;
+					c.result = true;
+					break;
+				}
+			} catch(RuntimeException e){ e.printStackTrace(); }		// The waiting agent gets a failed result
+			c.steps = stepped;
+			c.done = true;
+			LockSupport.unpark(c.waiter);
+		}
+	}
+
+	/** Let the agent with the given number grab or drop gold and show the result. */
+	private boolean grip(int id, boolean drop){
+		if(drop) env.drop(id);
+		else env.grab(id);
+		boolean succeeded = env.getFailedMessage() == null;
+		if(observer != null){
+			if(drop){
+				if(succeeded && env.at(env.getX(id), env.getY(id), Wumpus.CHEST))
+					observer.updateMood(id, 2);
+				else observer.updateMood(id, 0);
+			} else if(succeeded) observer.updateMood(id, 1);
+			observer.updateRealCell(env.getX(id), env.getY(id));
+		}
+		return succeeded;
+	}
+
+	/** Move the agent with the given number one cell and show the result. The move is not counted. */
+	private boolean step(int id, int direction){
+		int dX = direction==WumpusConstants.LEFT?(-1):(direction==WumpusConstants.RIGHT?1:0);
+		int dY = direction==WumpusConstants.UP?1:(direction==WumpusConstants.DOWN?(-1):0);
+		int oldX = env.getX(id), oldY = env.getY(id);
+		env.move(id, dX, dY);
+		boolean succeeded = env.getFailedMessage() == null;
+		stepped++;													// The mover waits for the animation afterwards
+		if(observer != null){
+			if(succeeded){											// Only the cells that the agent left and entered changed
+				observer.updateRealCell(oldX, oldY);
+				observer.updateRealCell(env.getX(id), env.getY(id));
+				observer.updateRealAgent(id);
+			}
 		}
+		return succeeded;
+	}
+	
+	/** Whether an agent is registered and has not died. */
+	public boolean isAlive(AgentInstantiation agent){
+		Integer id = agents.get(agent);
+		return id != null && submit(new Command(Command.ALIVE, id, 0, null, null));
+	}
+	
+	/** Whether all gold is delivered. Read by the writer, like the actions that change it. */
+	public boolean isCleared(){ return submit(new Command(Command.CLEARED, 0, 0, null, null)); }
+
+	/** Number of dead agents among the first agents of the world. */
+	public int getDeaths(int agents){
+		Command c = new Command(Command.DEATHS, 0, agents, null, null);
+		submit(c);
+		return c.amount;
+	}
+	
+	/** Register an agent. Agents get the numbers of the agents in the world in order. Returns -1 if there are no free agents left. */
+	public synchronized int registerAgent(AgentInstantiation agent){  
+		int id = agents.size();
+		if(id >= env.getAgentAmount()) return -1;
+		agents.put(agent, id);
+		return id;
 	}
 	
 	/** Announce one agent to the other agents in the environment */
@@ -85,11 +236,27 @@ public class AgentInterface {
 				a.addExternalEvent(new AgentAnnouncement(agent.getID(), x, y)); 
 	}
 	 
+	/**
+	 * Set the region of interest of an agent: the cells about which it wants to hear from other agents right away. 
+	 * @param agent The agent.
+	 * @param x0 Lowest x of the region.
+	 * @param y0 Lowest y of the region.
+	 * @param x1 Highest x of the region.
+	 * @param y1 Highest y of the region.
+	 */
+	public void setInterest(AgentInstantiation agent, int x0, int y0, int x1, int y1){
+		interests.put(agent.getID(), new int[]{x0, y0, x1, y1});
+	}
+	
+	/** Whether a cell is in the region of interest of an agent. Agents that did not set a region are interested in all cells. */
+	public boolean isInterested(int agentID, int x, int y){
+		int[] r = interests.get(agentID);
+		return r == null || (x >= r[0] && y >= r[1] && x <= r[2] && y <= r[3]);
+	}
+	 
 	/** Give the position of the agent. */
 	public void positionUpdate(AgentInstantiation agent, Percept p){
-		int id = agents.get(agent); 
-		p.setX(env.getX(id));
-		p.setY(env.getY(id));
+		submit(new Command(Command.POSITION, agents.get(agent), 0, null, p));
 	}
 	/**
 	 * Obtain the percepts for an agent. 
@@ -98,17 +265,20 @@ public class AgentInterface {
 	 * @return Whether perception succeeded (for now it always does).
 	 */
 	public boolean perceive(AgentInstantiation agent, Percept p){
-		int id = agents.get(agent);
+		return submit(new Command(Command.PERCEIVE, agents.get(agent), 0, null, p));
+	}
+
+	/** Fill the percept container of an agent, as the writer. */
+	private boolean applyPerceive(int id, Percept p){
 		int x = env.getX(id);
 		int y = env.getY(id);  
 		
 		// Fill the percept container
 		p.setX(x);
 		p.setY(y);
-		p.setAgent0(env.at(x, y, Wumpus.AGENT0));
-		p.setAgent1(env.at(x, y, Wumpus.AGENT1));
-		p.setAgent2(env.at(x, y, Wumpus.AGENT2));
-		p.setAgent3(env.at(x, y, Wumpus.AGENT3));
+		p.clearAgents();
+		for(int a = env.firstAgentAt(x, y); a >= 0; a = env.nextAgentAt(a))
+			p.addAgent(a);
 		p.setChest(env.at(x,y,Wumpus.CHEST));
 		p.setGlitter(env.at(x,y,Wumpus.GOLD));
 		p.setBreeze(env.at(x,y,Wumpus.BREEZE));
@@ -116,27 +286,73 @@ public class AgentInterface {
 		return true;
 	} 
 	
-	/** Show the beliefs of an agent in the GUI. */
-	public void showBelief(GridCell[][] world, AgentModel me, List<AgentModel> others, AgentInstantiation agent){
+	/**
+	 * Show the beliefs of an agent in the GUI. Only the changed cells are sent, unless the observer has not seen the 
+	 * latest beliefs of the agent, in which case all cells are sent. Nothing is sent for agents whose beliefs are not 
+	 * shown, or when running headless.
+	 * @param beliefs The beliefs of the agent.
+	 * @param me The agent's view of itself.
+	 * @param changed The cells (x*height+y) whose beliefs changed since the previous call.
+	 * @param amount Number of changed cells.
+	 * @param agent The agent.
+	 */
+	public void showBelief(BeliefPlanes beliefs, AgentModel me, int[] changed, int amount, AgentInstantiation agent){
+		if(observer == null) return;
 		int id = agents.get(agent);
-		gui.clearBelievedWorld(id);
-		gui.addToBelievedWorld(me.getID(), me.getX(), me.getY(), Wumpus.AGENT0<<me.getID());
-		for(int x = 0; x < env.getWidth(); x++){
-			for(int y = 0; y < env.getHeight(); y++){
-				if(world[x][y].isVisited()) gui.addToBelievedWorld(id, x, y, -1); // Remove the unknown symbol
-				if(world[x][y].hasAgent0()) gui.addToBelievedWorld(id, x, y, Wumpus.AGENT0);
-				if(world[x][y].hasAgent1()) gui.addToBelievedWorld(id, x, y, Wumpus.AGENT1);
-				if(world[x][y].hasAgent2()) gui.addToBelievedWorld(id, x, y, Wumpus.AGENT2);
-				if(world[x][y].hasAgent3()) gui.addToBelievedWorld(id, x, y, Wumpus.AGENT3);
-				if(world[x][y].hasBreeze()) gui.addToBelievedWorld(id, x, y, Wumpus.BREEZE);
-				if(world[x][y].hasStench()) gui.addToBelievedWorld(id, x, y, Wumpus.STENCH);
-				if(world[x][y].hasChest()) gui.addToBelievedWorld(id, x, y, Wumpus.CHEST);
-				if(world[x][y].hasGold()) gui.addToBelievedWorld(id, x, y, Wumpus.GOLD);
-				if(world[x][y].hasPit()) gui.addToBelievedWorld(id, x, y, Wumpus.PIT);
-				if(world[x][y].hasWumpus()) gui.addToBelievedWorld(id, x, y, Wumpus.WUMPUS);
-				if(world[x][y].isSafe()) gui.addToBelievedWorld(id, x, y, Wumpus.SAFE);
-			}
-		} 
+		if(!observer.isShowingBelief(id)){
+			synchronized(shownBeliefs){ shownBeliefs.clear(id); }		// Changes are missed from now on
+			return;
+		}
+		boolean full;
+		synchronized(shownBeliefs){ 
+			full = !shownBeliefs.get(id);
+			shownBeliefs.set(id);
+		}
+		int height = beliefs.getHeight();
+		int[] cells = full ? new int[beliefs.getWidth()*height] : changed;
+		if(full){
+			amount = cells.length;
+			for(int i = 0; i < amount; i++) cells[i] = i;
+		}
+		int[] objects = new int[amount];
+		for(int i = 0; i < amount; i++) objects[i] = objectsAt(beliefs, cells[i]/height, cells[i]%height);
+		observer.setBelievedCells(id, cells, objects, amount, full);
+		observer.setBelievedPosition(id, me.getX(), me.getY());
+	}
+
+	/** The objects that an agent believes to be at a cell, as Wumpus constants. */
+	private int objectsAt(BeliefPlanes beliefs, int x, int y){
+		int r = 0;
+		if(beliefs.get(BeliefPlanes.BREEZE, x, y)) r |= Wumpus.BREEZE;
+		if(beliefs.get(BeliefPlanes.STENCH, x, y)) r |= Wumpus.STENCH;
+		if(beliefs.get(BeliefPlanes.CHEST, x, y)) r |= Wumpus.CHEST;
+		if(beliefs.get(BeliefPlanes.GOLD, x, y)) r |= Wumpus.GOLD;
+		if(beliefs.get(BeliefPlanes.PIT, x, y)) r |= Wumpus.PIT;
+		if(beliefs.get(BeliefPlanes.WUMPUS, x, y)) r |= Wumpus.WUMPUS;
+		if(beliefs.get(BeliefPlanes.SAFE, x, y)) r |= Wumpus.SAFE;
+		if(r == 0 && !beliefs.get(BeliefPlanes.VISITED, x, y)) r = Wumpus.UNKNOWN;
+		return r;
 	}
 	
+
+	/** An action or perception of an agent that waits to be applied by the writer, and its result. */
+	private static class Command {
+		private static final int MOVE = 0, GRAB = 1, DROP = 2, ACT = 3, PERCEIVE = 4, POSITION = 5, ALIVE = 6, CLEARED = 7, DEATHS = 8;
+		private final int type, id, argument;					// Kind of command, agent number and the direction of a move or number of agents
+		private final ActionBatch batch;						// Actions of an ACT command
+		private final Percept percept;							// Container of a PERCEIVE or POSITION command
+		private final Thread waiter = Thread.currentThread();	// Thread that queued the command
+		private boolean result;									// Written before done, so visible to the waiter
+		private int steps;										// Moves that were attempted, whose animations the waiter waits for
+		private int amount;										// Result of a DEATHS command
+		private volatile boolean done = false;
+
+		private Command(int type, int id, int argument, ActionBatch batch, Percept percept){
+			this.type = type;
+			this.id = id;
+			this.argument = argument;
+			this.batch = batch;
+			this.percept = percept;
+		}
+	}
 }
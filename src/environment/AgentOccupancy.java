@@ -0,0 +1,118 @@
+package environment;
+
+import java.util.Arrays;
+/**
+ * Index of which agents stand on which cell. Agents on the same cell form a doubly linked list through the
+ * <code>next</code> and <code>prev</code> arrays, and an open addressing hash table maps each occupied cell to the first
+ * agent of its list. Adding, removing and finding the first agent of a cell are O(1) (expected) and the memory use is
+ * proportional to the number of agents, not to the size of the world.
+ *
+ * @author Bas Testerink
+ */
+class AgentOccupancy {
+	private static final long EMPTY = -1;		// Marks an empty slot in the hash table
+	private long[] keys;						// Cell keys of the hash table
+	private int[] heads;						// First agent of the cell with the same slot
+	private int size;							// Number of occupied cells
+	private int[] next, prev;					// Linked lists of agents per cell, -1 marks the end
+
+	public AgentOccupancy(){
+		keys = new long[16];
+		heads = new int[16];
+		Arrays.fill(keys, EMPTY);
+		next = new int[4];
+		prev = new int[4];
+	}
+
+	/** Get the first agent on a cell or -1 if there is none. */
+	public int first(long cell){
+		int slot = find(cell);
+		return keys[slot] == EMPTY ? -1 : heads[slot];
+	}
+
+	/** Get the agent after the given one on the same cell or -1 if it is the last. */
+	public int next(int agent){ return next[agent]; }
+
+	/** Put an agent on a cell. The agent must not be on another cell. */
+	public void add(int agent, long cell){
+		if(agent >= next.length){										// Grow the per agent arrays
+			int n = Math.max(agent+1, next.length*2);
+			next = Arrays.copyOf(next, n);
+			prev = Arrays.copyOf(prev, n);
+		}
+		int slot = find(cell);
+		prev[agent] = -1;
+		if(keys[slot] == EMPTY){										// First agent on the cell
+			keys[slot] = cell;
+			heads[slot] = agent;
+			next[agent] = -1;
+			if(++size*2 > keys.length) rehash();
+		} else {														// Put in front of the others
+			next[agent] = heads[slot];
+			prev[heads[slot]] = agent;
+			heads[slot] = agent;
+		}
+	}
+
+	/** Remove an agent from the cell it is on. */
+	public void remove(int agent, long cell){
+		if(prev[agent] != -1){											// Not the first agent of the cell
+			next[prev[agent]] = next[agent];
+			if(next[agent] != -1) prev[next[agent]] = prev[agent];
+		} else {
+			int slot = find(cell);
+			if(next[agent] != -1){										// Another agent becomes the first
+				heads[slot] = next[agent];
+				prev[next[agent]] = -1;
+			} else delete(slot);										// Cell is empty now
+		}
+		next[agent] = prev[agent] = -1;
+	}
+
+	/** Find the slot of a cell, or the empty slot where it would be inserted. */
+	private int find(long cell){
+		int mask = keys.length-1;
+		int slot = home(cell, mask);
+		while(keys[slot] != EMPTY && keys[slot] != cell) slot = (slot+1)&mask;
+		return slot;
+	}
+
+	private static int home(long cell, int mask){
+		long h = cell * 0x9e3779b97f4a7c15L;
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+
+	/** Empty a slot. Later entries of the same probe sequence are shifted back so that lookups keep working. */
+	private void delete(int slot){
+		int mask = keys.length-1;
+		int j = slot;
+		while(true){
+			j = (j+1)&mask;
+			if(keys[j] == EMPTY) break;
+			int k = home(keys[j], mask);
+			boolean between = slot <= j ? (slot < k && k <= j) : (slot < k || k <= j); // Home of j lies cyclically in (slot,j]
+			if(!between){
+				keys[slot] = keys[j];
+				heads[slot] = heads[j];
+				slot = j;
+			}
+		}
+		keys[slot] = EMPTY;
+		size--;
+	}
+
+	/** Double the hash table. */
+	private void rehash(){
+		long[] oldKeys = keys;
+		int[] oldHeads = heads;
+		keys = new long[oldKeys.length*2];
+		heads = new int[oldKeys.length*2];
+		Arrays.fill(keys, EMPTY);
+		for(int i = 0; i < oldKeys.length; i++)
+			if(oldKeys[i] != EMPTY){
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				heads[slot] = oldHeads[i];
+			}
+	}
+}
@@ -0,0 +1,16 @@
+package environment;
+/**
+ * Provides the initial cells of the chunks of a ChunkedWorld, when a chunk is first used.
+ *
+ * @author Bas Testerink
+ */
+interface ChunkSource {
+	/**
+	 * Fill the cells of a chunk with their initial content.
+	 * @param x0 X coordinate of the chunk's first cell.
+	 * @param y0 Y coordinate of the chunk's first cell.
+	 * @param cells The zeroed cells of the chunk, indexed as (x-x0)*ChunkedWorld.CHUNK+(y-y0). Cells outside of the
+	 * world must stay 0.
+	 */
+	void fill(int x0, int y0, int[] cells);
+}
@@ -0,0 +1,106 @@
+package environment;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+/**
+ * The cells of a Wumpus world, stored in square chunks of CHUNK x CHUNK cells. A chunk is created when one of its cells
+ * is first read or written, and filled by the ChunkSource of the world (generated or loaded from a mapped file). A
+ * world without a source starts empty. Chunks without any objects share one empty array until a cell of them is
+ * written, and chunks that were never used take no memory at all. A world therefore takes memory in proportion to the
+ * area that is used, not to its dimensions.
+ *
+ * The cells are only used by one thread at a time: the thread that holds the writer role of the AgentInterface while
+ * agents run, and the loading or checkpointing thread before and after. Handing over the writer role orders their
+ * accesses, so the chunks and the most recently used chunk need no synchronization of their own.
+ *
+ * @author Bas Testerink
+ */
+class ChunkedWorld {
+	static final int SHIFT = 6, CHUNK = 1<<SHIFT, MASK = CHUNK-1;	// Chunks are 64x64 cells
+	private static final int[] EMPTY = new int[CHUNK*CHUNK];		// Shared by all chunks without objects, never written
+	private Map<Long, int[]> chunks = new HashMap<Long, int[]>();	// Chunks that were used, by key
+	private ChunkSource source;										// Initial content of the chunks, null if empty
+	private long lastKey = Long.MIN_VALUE;							// Key of the most recently used chunk
+	private int[] last = EMPTY;										// Cells of the most recently used chunk
+
+	ChunkedWorld(ChunkSource source){ this.source = source; }
+
+	/** Get a cell. */
+	int get(int x, int y){ return chunk(x, y)[((x&MASK)<<SHIFT)|(y&MASK)]; }
+
+	/** Set a cell. A shared empty chunk is replaced by its own array first. */
+	void set(int x, int y, int value){
+		int[] cells = chunk(x, y);
+		if(cells == EMPTY){
+			if(value == 0) return;
+			cells = new int[CHUNK*CHUNK];
+			chunks.put(key(x, y), cells);
+			last = cells;
+		}
+		cells[((x&MASK)<<SHIFT)|(y&MASK)] = value;
+	}
+
+	/** Number of chunks that have their own array. */
+	int getChunkAmount(){
+		int n = 0;
+		for(int[] cells : chunks.values()) if(cells != EMPTY) n++;
+		return n;
+	}
+
+	/** The cells of the chunk that holds (x,y), created if it was not used before. */
+	private int[] chunk(int x, int y){
+		long key = key(x, y);
+		if(key == lastKey) return last;
+		int[] cells = chunks.get(key);
+		if(cells == null){
+			if(source == null) cells = EMPTY;							// Nothing to fill, so no need to keep it
+			else {
+				cells = new int[CHUNK*CHUNK];
+				source.fill(x&~MASK, y&~MASK, cells);
+				if(isEmpty(cells)) cells = EMPTY;
+				chunks.put(key, cells);
+			}
+		}
+		lastKey = key;
+		last = cells;
+		return cells;
+	}
+
+	private static long key(int x, int y){ return ((long)(x>>SHIFT)<<32) | ((y>>SHIFT)&0xffffffffL); }
+
+	private static boolean isEmpty(int[] cells){
+		for(int c : cells) if(c != 0) return false;
+		return true;
+	}
+
+	/**
+	 * Write the chunks that have their own array: their number and per chunk its key and cells. Chunks that are not 
+	 * written are recreated from the source when they are read.
+	 */
+	void write(DataOutput out) throws IOException {
+		List<Map.Entry<Long, int[]>> owned = new ArrayList<Map.Entry<Long, int[]>>();
+		for(Map.Entry<Long, int[]> e : chunks.entrySet()) if(e.getValue() != EMPTY) owned.add(e);
+		out.writeInt(owned.size());
+		for(Map.Entry<Long, int[]> e : owned){
+			out.writeLong(e.getKey());
+			for(int c : e.getValue()) out.writeInt(c);
+		}
+	}
+
+	/** Read chunks that <code>write</code> wrote, replacing the chunks at their keys. */
+	void read(DataInput in) throws IOException {
+		for(int n = in.readInt(); n > 0; n--){
+			long key = in.readLong();
+			int[] cells = new int[CHUNK*CHUNK];
+			for(int i = 0; i < cells.length; i++) cells[i] = in.readInt();
+			chunks.put(key, cells);
+		}
+		lastKey = Long.MIN_VALUE;
+		last = EMPTY;
+	}
+}
@@ -0,0 +1,42 @@
+package environment;
+
+import java.io.IOException;
+/**
+ * Converts worlds to the binary world format (see {@link Wumpus#writeBinary(String)}). Usage:
+ *
+ * java environment.WorldConverter [-size WxH] [-agents n] world output
+ *
+ * The world is a world file (text or binary) or a generator seed <code>seed:n</code>. Generated worlds have the given
+ * size (32x32 by default) and number of agents (4 by default) and the default densities of the generator. Wumpus
+ * loads the output file like any other world file.
+ *
+ * @author Bas Testerink
+ */
+public class WorldConverter {
+	public static void main(String[] args) throws IOException {
+		int width = 32, height = 32, agents = -1;
+		String in = null, out = null;
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-size")){
+				String[] size = args[++i].split("x");
+				width = Integer.parseInt(size[0]);
+				height = Integer.parseInt(size[1]);
+			}
+			else if(args[i].equals("-agents")) agents = Integer.parseInt(args[++i]);
+			else if(in == null) in = args[i];
+			else out = args[i];
+		}
+		if(out == null){
+			System.out.println("Usage: java environment.WorldConverter [-size WxH] [-agents n] world output");
+			return;
+		}
+		Wumpus w = new Wumpus();
+		if(in.startsWith("seed:")){
+			WumpusGenerator generator = new WumpusGenerator(Long.parseLong(in.substring(5)), width, height);
+			if(agents >= 0) generator.setAgents(agents);
+			generator.generate(w);
+		} else w.loadFromFile(in, false);
+		w.writeBinary(out);
+		System.out.println("Wrote "+out+": "+w.getWidth()+"x"+w.getHeight()+", "+w.getAgentAmount()+" agents");
+	}
+}
@@ -1,11 +1,26 @@
 package environment; 
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader; 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import javax.swing.JFileChooser; 
+import static environment.ChunkedWorld.CHUNK;
+import static environment.ChunkedWorld.SHIFT;
 /**
- * This class implements the Wumpus world for maximally four agents. Creating Wumpus agents is an excellent way of practicing
+ * This class implements the Wumpus world for any number of agents. Creating Wumpus agents is an excellent way of practicing
  * (symbolic) A.I. as it requires some reasoning and path planning. A standard, solvable world is:
  * dimensions 4 4
  * agent 0 0 0
@@ -18,32 +33,47 @@ import javax.swing.JFileChooser;
  * Copy paste the above specification in a file and use <code>loadFromFile</code> to load it. In this simplified version we do
  * not allow agents to shoot an arrow. 
  * 
- * The basic idea of the data layout is that the world is a double array of integers. Each integer is treated as an array of 32 bits.
+ * The basic idea of the data layout is that the world is a grid of integers. Each integer is treated as an array of 32 bits.
  * Objects (agents, pits, etc) have a number that equals a bit position. One can thus add/remove an object by adding/subtracting it from
  * a cell's integer. This style allows for small memory usage and is quite fast, which is ideal if one wants to transfer the world to
  * a device with little computational power. 
  * 
+ * The grid is stored in chunks (see ChunkedWorld) that are only created when they are first used. Generated worlds and 
+ * binary files fill a chunk at that moment, so a large world only takes memory for the area that the agents visit.
+ * 
+ * Agents are not stored per bit in the cells. A cell only has the AGENT bit when at least one agent stands on it. Which
+ * agents stand where is kept in a separate occupancy index, so the number of agents is not limited by the cell encoding.
+ * 
+ * Besides the text format above, worlds can be stored in a binary format (see <code>writeBinary</code>) that holds the
+ * cells as they are stored here, including breezes and stenches. Binary files are memory mapped, so loading them is a
+ * copy of the cells instead of a parse. Resets start again from the mapping without reading the file.
+ * 
  * @author Bas Testerink
  *
  */
 public class Wumpus {
 	public static final int	GLITTER=1,BREEZE=1<<1,STENCH=1<<2,
 							PIT=1<<3,GOLD=1<<4,CHEST=1<<5,
-							WUMPUS=1<<6,AGENT0=1<<7,AGENT1=1<<8,
-							AGENT2=1<<9,AGENT3=1<<10,UNKNOWN=1<<11,
+							WUMPUS=1<<6,AGENT=1<<7,UNKNOWN=1<<11,
 							SAFE=1<<12; // Possible entities
 	private String failed_message = null, lastfile=null;   	// Message when an action fails
-	private int[][] world = null; 	      					// The world
+	private ChunkedWorld world = null; 	      				// The world
 	private int[] agent_locations = null; 					// (x,y) coordinates of agents
 	private boolean[] is_dead, has_gold;  					// Keep track of whether agents are dead and whether they own gold
+	private AgentOccupancy occupancy;						// Which agents stand on which cell
 	private int width, height;			  					// World's dimensions
+	private int agent_amount, gold_amount;					// Number of agents in the world and pieces of gold that are not yet delivered (-1 if not yet counted)
+	private WumpusGenerator generator = null;				// Generator of the world if it was not loaded from a file
+	private MappedByteBuffer mapped = null;					// Contents of the binary file that the world was loaded from
+	public static final int BINARY_MAGIC = 0x57574C44, BINARY_VERSION = 1; // Start of binary world files ("WWLD")
+	private static final int BINARY_HEADER = 6;				// Ints before the agent locations in a binary world file
 
 	/** Constructor. Calls <code>reset()</code> to initialize the data. */
 	public Wumpus() { reset(); }
 	
 	/**
 	 * Load a file. Must start with the world's dimensions. Agents have an extra argument in the end which indicates the number
-	 * of the agent. The agent's number must be between 0 and 3 (inclusive).
+	 * of the agent. Agents must be numbered 0, 1, 2, etc.
 	 * @param file File to load.
 	 * @param give_choice When set to true a file chooser will appear for selecting a file.
 	 */
@@ -58,32 +88,44 @@ public class Wumpus {
 					f = jfc.getSelectedFile();
 			}
 			lastfile = f.getPath();													// Store the last chosen file for resets
+			generator = null;
+			mapped = null;
+			if(isBinary(f)){														// Binary files are mapped instead of parsed
+				FileInputStream in = new FileInputStream(f);
+				try{ mapped = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, f.length()); } // The mapping outlives the channel
+				finally { in.close(); }
+				loadMapped();
+				return;
+			}
 			BufferedReader reader = new BufferedReader(new FileReader(f)); 			// Make reader
 			String[] dimension = reader.readLine().split(" ");				   		// First line: Dimension: width height
 			width = Integer.parseInt(dimension[1]);  								// Get the world's dimensions
 			height = Integer.parseInt(dimension[2]);
-			world = new int[width][height];			 								// Initiate world
+			world = new ChunkedWorld(null);			 								// Initiate world
+			clearAgents();
+			gold_amount = 0;
 			String s = reader.readLine();
 			while(s!=null){							 								// Read through file 
 				String[] split = s.split(" "); 		 								// Split the string
 				int x = Integer.parseInt(split[1]);  								// Get x and y
 				int y = Integer.parseInt(split[2]);
 				if(split[0].equals("gold")){		 			  					// gold x y
-					world[x][y] += GLITTER;						  					// Place glitter
-					world[x][y] += GOLD;						  					// Place gold
-				} else if(split[0].equals("chest")) world[x][y] += CHEST;			// chest x y
+					add(x,y,GLITTER);						  					// Place glitter
+					add(x,y,GOLD);						  					// Place gold
+					gold_amount++;
+				} else if(split[0].equals("chest")) add(x,y,CHEST);			// chest x y
 				else if(split[0].equals("pit")){		 		  					// pit x y
-					world[x][y] += PIT;						  	 					// Place pit
-					if(!at(x-1,y,BREEZE)&&!outside(x-1,y))world[x-1][y] += BREEZE;  // Add breezes
-					if(!at(x+1,y,BREEZE)&&!outside(x+1,y))world[x+1][y] += BREEZE;
-					if(!at(x,y-1,BREEZE)&&!outside(x,y-1))world[x][y-1] += BREEZE;
-					if(!at(x,y+1,BREEZE)&&!outside(x,y+1))world[x][y+1] += BREEZE;
+					add(x,y,PIT);						  	 					// Place pit
+					if(!at(x-1,y,BREEZE)&&!outside(x-1,y))add(x-1,y,BREEZE);  // Add breezes
+					if(!at(x+1,y,BREEZE)&&!outside(x+1,y))add(x+1,y,BREEZE);
+					if(!at(x,y-1,BREEZE)&&!outside(x,y-1))add(x,y-1,BREEZE);
+					if(!at(x,y+1,BREEZE)&&!outside(x,y+1))add(x,y+1,BREEZE);
 				} else if(split[0].equals("wumpus")){		 	  					// wumpus x y
-					world[x][y] += WUMPUS;						  					// Place wumpus
-					if(!at(x-1,y,STENCH)&&!outside(x-1,y))world[x-1][y] += STENCH; 	// Add stench
-					if(!at(x+1,y,STENCH)&&!outside(x+1,y))world[x+1][y] += STENCH;
-					if(!at(x,y-1,STENCH)&&!outside(x,y-1))world[x][y-1] += STENCH;
-					if(!at(x,y+1,STENCH)&&!outside(x,y+1))world[x][y+1] += STENCH;
+					add(x,y,WUMPUS);						  					// Place wumpus
+					if(!at(x-1,y,STENCH)&&!outside(x-1,y))add(x-1,y,STENCH); 	// Add stench
+					if(!at(x+1,y,STENCH)&&!outside(x+1,y))add(x+1,y,STENCH);
+					if(!at(x,y-1,STENCH)&&!outside(x,y-1))add(x,y-1,STENCH);
+					if(!at(x,y+1,STENCH)&&!outside(x,y+1))add(x,y+1,STENCH);
 				} else if(split[0].equals("agent")){			  					// agent x y agentnr
 					int agentnr = Integer.parseInt(split[3]);						// Get agent's id number
 					putAgent(agentnr, x, y);										// Add agent to the world
@@ -94,6 +136,129 @@ public class Wumpus {
 		} catch(Exception e){e.printStackTrace();}
 	}
 
+	/**
+	 * Replace the world by a generated one. Used by the WumpusGenerator.
+	 * @param world The new world, without agents.
+	 * @param width Width of the world.
+	 * @param height Height of the world.
+	 * @param agent_locations Start locations of the agents as (x,y) pairs.
+	 * @param agents Number of agents to place.
+	 * @param generator The generator, used again when the world is reset.
+	 */
+	void setWorld(ChunkedWorld world, int width, int height, int[] agent_locations, int agents, WumpusGenerator generator){
+		this.world = world;
+		this.width = width;
+		this.height = height;
+		this.generator = generator;
+		lastfile = null;
+		mapped = null;
+		clearAgents();
+		for(int i = 0; i < agents; i++) putAgent(i, agent_locations[i*2], agent_locations[i*2+1]);
+		gold_amount = -1;										// Counted when it is first needed
+	}
+
+	/** Add (or with a negative value subtract) an object to a cell. */
+	private void add(int x, int y, int object){ world.set(x, y, world.get(x, y)+object); }
+
+	/** Whether a file starts like a binary world file. */
+	private static boolean isBinary(File f) throws IOException {
+		if(f.length() < BINARY_HEADER*4) return false;
+		DataInputStream in = new DataInputStream(new FileInputStream(f));
+		try{ return in.readInt() == BINARY_MAGIC; } 
+		finally { in.close(); }
+	}
+
+	/** Start the world from the mapped binary file. The cells of a chunk are copied from the mapping when it is first used. */
+	private void loadMapped() throws IOException {
+		ByteBuffer bytes = mapped.duplicate();
+		bytes.clear();												// Java 8's clear() returns a Buffer, so it is not chained
+		IntBuffer ints = bytes.asIntBuffer();
+		if(ints.get(0) != BINARY_MAGIC || ints.get(1) != BINARY_VERSION) throw new IOException("Unknown binary world version "+ints.get(1));
+		width = ints.get(2);
+		height = ints.get(3);
+		gold_amount = ints.get(4);
+		int agents = ints.get(5);
+		world = new ChunkedWorld(new MappedCells(ints, BINARY_HEADER+agents*2, width, height));
+		clearAgents();
+		for(int i = 0; i < agents; i++) putAgent(i, ints.get(BINARY_HEADER+i*2), ints.get(BINARY_HEADER+i*2+1));
+	}
+
+	/**
+	 * Write the world in the binary format: the ints BINARY_MAGIC, BINARY_VERSION, width, height, the number of pieces
+	 * of gold and the number of agents, then the (x,y) start location of each agent and then the cells, column after 
+	 * column (x) and within a column by y, as <code>getCell</code> gives them without the AGENT bits. Ints are 
+	 * big-endian. Agents are written at their current locations, as if they start there.
+	 * @param file The file to write.
+	 */
+	public void writeBinary(String file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16));
+		try{
+			out.writeInt(BINARY_MAGIC);
+			out.writeInt(BINARY_VERSION);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(getGoldAmount());
+			out.writeInt(agent_amount);
+			for(int i = 0; i < agent_amount; i++){
+				out.writeInt(getX(i));
+				out.writeInt(getY(i));
+			}
+			for(int x = 0; x < width; x++)
+				for(int y = 0; y < height; y++)
+					out.writeInt(world.get(x, y)&~AGENT);
+		} finally { out.close(); }
+	}
+
+	/**
+	 * Write the state of the world and the agents, for a checkpoint. The file or generator that the world came from is
+	 * written as well, together with the chunks that were used. Chunks that were not used come from the file or
+	 * generator again when the checkpoint is read.
+	 * @param out The output to write to.
+	 */
+	public void writeCheckpoint(DataOutput out) throws IOException {
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeUTF(lastfile == null ? "" : lastfile);
+		out.writeBoolean(generator != null);
+		if(generator != null) generator.write(out);
+		out.writeInt(gold_amount);
+		world.write(out);
+		out.writeInt(agent_amount);
+		for(int i = 0; i < agent_amount; i++){
+			out.writeInt(getX(i));
+			out.writeInt(getY(i));
+			out.writeBoolean(is_dead[i]);
+			out.writeBoolean(has_gold[i]);
+		}
+	}
+
+	/**
+	 * Replace the world and the agents by the state that <code>writeCheckpoint</code> wrote.
+	 * @param in The input to read from.
+	 */
+	public void readCheckpoint(DataInput in) throws IOException {
+		width = in.readInt();
+		height = in.readInt();
+		lastfile = in.readUTF();
+		if(lastfile.isEmpty()) lastfile = null;
+		WumpusGenerator g = in.readBoolean() ? WumpusGenerator.read(in) : null;
+		if(lastfile != null && isBinary(new File(lastfile))) loadFromFile(lastfile, false); // Unused chunks come from the mapping again
+		else {
+			mapped = null;
+			world = new ChunkedWorld(g);
+		}
+		generator = g;
+		gold_amount = in.readInt();
+		world.read(in);
+		clearAgents();
+		int agents = in.readInt();
+		for(int i = 0; i < agents; i++){
+			putAgent(i, in.readInt(), in.readInt());
+			is_dead[i] = in.readBoolean();
+			has_gold[i] = in.readBoolean();
+		}
+	}
+
 	/**
 	 * Check whether a certain object is present at some x and y in the world.
 	 * @param x X coordinate.
@@ -103,7 +268,7 @@ public class Wumpus {
 	 */
 	public boolean at(int x, int y, int object){
 		if(outside(x,y)) return false;		// Outside of the world is nothing
-		else return (world[x][y]&object)>0; // Check for the presence of the object
+		else return (world.get(x,y)&object)>0; // Check for the presence of the object
 	}
 	
 	/**
@@ -117,13 +282,14 @@ public class Wumpus {
 	}
 
 	/**
-	 * Reset the world, also reloads the latest file.
+	 * Reset the world, also reloads the latest file or regenerates the generated world. Binary files are not read again.
 	 */
 	public void reset(){
-		agent_locations = new int[8];
-		is_dead = new boolean[]{false,false,false,false};
-		has_gold = new boolean[]{false,false,false,false};
-		if(lastfile!=null) loadFromFile(lastfile,false);
+		clearAgents();
+		if(mapped!=null){
+			try{ loadMapped(); } catch(IOException e){ e.printStackTrace(); }
+		} else if(lastfile!=null) loadFromFile(lastfile,false);
+		else if(generator!=null) generator.generate(this);
 	}
 	
 	/*
@@ -135,7 +301,7 @@ public class Wumpus {
 	 * Move an agent. Fails if the agent would end up outside of the world, or if the agent is already dead.
 	 * Note that in principle it is allowed to move more than one square and towards any position in the world. It is up
 	 * to the system that uses this world whether to restrict movement.
-	 * @param agent The agent that moves (between 0 and 3, inclusive)
+	 * @param agent The agent that moves.
 	 * @param dX Delta x, the amount of movement horizontally.
 	 * @param dY Delta y, the amount of movement vertically.
 	 */
@@ -149,37 +315,83 @@ public class Wumpus {
 			if(outside(agentX,agentY))							 	// Agents may not move outside of the world
 				failed_message = "Agent "+agent+" could not move with dX = "+dX+" and dY = "+dY+" to location ("+agentX+","+agentY+").";
 			else {
+				removeAgent(agent, oldX, oldY);						// Remove from old position
 				putAgent(agent, agentX, agentY);
-				world[oldX][oldY] -= (1<<(7+agent));				// Remove from old position
 				if(at(agentX,agentY,PIT)||at(agentX,agentY,WUMPUS)) // Check whether the agent is now dead after the movement
 					is_dead[agent] = true;
 			}
 		} else failed_message = "Dead agent "+agent+" is  trying  to move.";
 	}
 
+	/** Remove all agents. The per agent arrays start with room for four agents and grow when needed. */
+	private void clearAgents(){
+		agent_locations = new int[8];
+		is_dead = new boolean[4];
+		has_gold = new boolean[4];
+		occupancy = new AgentOccupancy();
+		agent_amount = 0;
+	}
+	
 	/**
-	 * Add an agent to the world.
-	 * @param agent Agent to add (between 0 and 3 (inclusive)).
+	 * Add an agent to the world. An agent that is new to the world must get the next free number.
+	 * @param agent Agent to add.
 	 * @param x Agent's x coordinate.
 	 * @param y Agent's y coordinate.
 	 */
 	private void putAgent(int agent, int x, int y){
+		if(agent >= agent_amount){				// A new agent
+			if(agent >= is_dead.length){		// Grow the per agent arrays
+				int n = Math.max(agent+1, is_dead.length*2);
+				agent_locations = Arrays.copyOf(agent_locations, n*2);
+				is_dead = Arrays.copyOf(is_dead, n);
+				has_gold = Arrays.copyOf(has_gold, n);
+			}
+			agent_amount = agent+1;
+		}
 		agent_locations[agent*2] = x;  			// Update location
 		agent_locations[agent*2+1] = y;
-		world[x][y] += (1<<(7+agent));			// Add to new position
+		occupancy.add(agent, cell(x,y));		// Add to new position
+		world.set(x, y, world.get(x, y)|AGENT);
 	}
 	
+	/** Remove an agent from its position, the AGENT bit is removed when the cell becomes empty. */
+	private void removeAgent(int agent, int x, int y){
+		occupancy.remove(agent, cell(x,y));
+		if(occupancy.first(cell(x,y)) < 0) world.set(x, y, world.get(x, y)&~AGENT);
+	}
+	
+	/** Key of a cell in the occupancy index. */
+	private long cell(int x, int y){ return (long)x*height+y; }
+	
+	/**
+	 * Get an agent that stands at (x,y). Use <code>nextAgentAt</code> to get the others.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return The number of an agent at (x,y) or -1 if there is none.
+	 */
+	public int firstAgentAt(int x, int y){
+		if(!at(x,y,AGENT)) return -1;
+		return occupancy.first(cell(x,y));
+	}
+	
+	/**
+	 * Get the next agent that stands on the same position as a given agent.
+	 * @param agent The previous agent, obtained with <code>firstAgentAt</code> or <code>nextAgentAt</code>.
+	 * @return The number of the next agent or -1 if there is none.
+	 */
+	public int nextAgentAt(int agent){ return occupancy.next(agent); }
+	
 	/**
 	 * Get the world data of the position the agent is standing on. Returns the int representation with 1st bit: glitter,
-	 * 2nd bit: breeze, 3rd bit: stench, 4th bit: gold, 5th bit: chest, 6th bit: wumpus, 7/8/9/10th bits: agents, 11th bit: unknown
-	 * 12th bit: is safe. Perceiving fails if the agent is dead (and then always returns 0, it can't perceive anything after all).
+	 * 2nd bit: breeze, 3rd bit: stench, 4th bit: pit, 5th bit: gold, 6th bit: chest, 7th bit: wumpus, 8th bit: agents, 
+	 * 12th bit: unknown, 13th bit: is safe. Perceiving fails if the agent is dead (and then always returns 0, it can't perceive anything after all).
 	 * @param agent The perceiving agent.
 	 * @return Integer that holds the position's data or 0 if agent is dead.
 	 */
 	public int perceive(int agent){
 		failed_message = null; 						// Reset fail message
 		if(!is_dead[agent]){ 						// No zombies allowed 
-			return world[getX(agent)][getY(agent)]; // Agents perceive at the spot they stand on 
+			return world.get(getX(agent),getY(agent)); // Agents perceive at the spot they stand on 
 		} else {
 			failed_message = "Dead agent "+agent+" is  trying  to perceive.";
 			return 0;									// Return 0 when not alive
@@ -214,8 +426,8 @@ public class Wumpus {
 			int agentX = getX(agent);				// Get agent's x and y
 			int agentY = getY(agent); 
 			if(at(agentX,agentY,GOLD)){				// Check whether there is gold to grab
-				world[agentX][agentY] -= GOLD;		// Remove the gold
-				world[agentX][agentY] -= GLITTER;   // Glitter at the location is now also removed
+				add(agentX,agentY,-GOLD);		// Remove the gold
+				add(agentX,agentY,-GLITTER);   // Glitter at the location is now also removed
 				has_gold[agent] = true; 			// Update has_gold fact
 			} else failed_message = "Agent "+agent+" grabs but there is no gold.";
 		} else failed_message = "Agent "+agent+" is either dead or already has gold while trying to grab.";
@@ -232,9 +444,10 @@ public class Wumpus {
 			int agentY = getY(agent); 
 			if(at(agentX,agentY,CHEST)){			// Gold that is dropped in a chest disappears
 				has_gold[agent] = false;
+				gold_amount = getGoldAmount()-1;
 			} else if(!at(agentX,agentY,GOLD)){		// Cannot drop gold on gold
-				world[agentX][agentY] += GOLD;		// Add the gold
-				world[agentX][agentY] += GLITTER;	// Add corresponding glittering
+				add(agentX,agentY,GOLD);		// Add the gold
+				add(agentX,agentY,GLITTER);	// Add corresponding glittering
 				has_gold[agent] = false; 			// Update has_gold fact
 			} else failed_message = "Agent "+agent+" drops but there is already gold.";
 		} else failed_message = "Agent "+agent+" is either dead or has no gold while trying to drop.";
@@ -244,7 +457,41 @@ public class Wumpus {
 	public int getWidth(){ return width; }
 	public int getHeight(){ return height; } 
 	public String getFailedMessage(){ return failed_message; }
-	public int[][] getWorld(){ return world; }
+	/** Get the content of a cell, which must be inside the world. */
+	public int getCell(int x, int y){ return world.get(x, y); }
+	/** Number of chunks of the world that take memory. */
+	public int getChunkAmount(){ return world.getChunkAmount(); }
 	public boolean[] getDeaths(){ return is_dead; }
 	public boolean hasGold(int agent){ return has_gold[agent]; }
-}
\ No newline at end of file
+	public int getAgentAmount(){ return agent_amount; }
+	/** The generator of the world, null if the world was loaded from a file. */
+	public WumpusGenerator getGenerator(){ return generator; }
+	/** Number of pieces of gold that are not yet delivered. The gold of a generated world is counted on the first call. */
+	public int getGoldAmount(){ 
+		if(gold_amount < 0) gold_amount = generator.countGold();
+		return gold_amount; 
+	}
+	public boolean isCleared(){ return getGoldAmount() == 0; }
+
+	/** Copies the cells of chunks from a mapped binary world file, a column of the chunk at a time. */
+	private static class MappedCells implements ChunkSource {
+		private IntBuffer ints;										// The whole file
+		private int offset, width, height;							// Index of the first cell, dimensions of the world
+
+		private MappedCells(IntBuffer ints, int offset, int width, int height){
+			this.ints = ints;
+			this.offset = offset;
+			this.width = width;
+			this.height = height;
+		}
+
+		public void fill(int x0, int y0, int[] cells){
+			IntBuffer b = ints.duplicate();							// Own position, the buffer itself is left as it is
+			int length = Math.min(CHUNK, height-y0);
+			for(int x = x0; x < Math.min(x0+CHUNK, width); x++){
+				b.position(offset+x*height+y0);
+				b.get(cells, (x-x0)<<SHIFT, length);
+			}
+		}
+	}
+}
@@ -5,13 +5,15 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.image.BufferedImage;
 import java.io.File; 
 import java.util.ArrayList; 
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.imageio.ImageIO; 
 import javax.swing.JFileChooser;
@@ -31,16 +33,21 @@ import javax.swing.JPanel;
  * @author Bas Testerink
  *
  */
-public class WumpusGUI extends JPanel implements MouseListener { 
+public class WumpusGUI extends JPanel implements MouseListener, WumpusObserver { 
 	private Wumpus current_state = null; 										// The Wumpus instantiation on which agent operate
-	private FrameCaller frame_caller = null;									// Runnable that can update agent positions
-	private Thread frame_caller_thread = null;									// Thread that holds the runnable
-	private int width,height,cell_size, selected_agent=0;						// World width/height/cell_size and the selected agent
-	private BufferedImage[] numbers = null, chests = null;						// Border numbers and chest states
+	private Animator animator = null;											// Runnable that updates agent positions while they move
+	private Thread animator_thread = null;										// Thread that holds the runnable
+	private int width,height,cell_size;											// World width/height/cell_size
+	private volatile int selected_agent=0;										// The agent whose believed world is shown
+	private BufferedImage[] numbers = null, chests = null;						// Digits for the border numbers and chest states
+	private static final int DRAWN = Wumpus.UNKNOWN|Wumpus.BREEZE|Wumpus.PIT|Wumpus.STENCH|Wumpus.WUMPUS|Wumpus.CHEST|Wumpus.GOLD|Wumpus.SAFE; // Objects that have an icon
+	private Map<Integer, BufferedImage> tiles = new HashMap<Integer, BufferedImage>();	// Drawn cells per combination of objects
+	private Map<Integer, BufferedImage> labels = new HashMap<Integer, BufferedImage>();	// Drawn border numbers
 	private BufferedImage[][] agent_status_options = null, small_agent = null;	// Agent states
 	private BufferedImage reset = null, notice_board = null, bigchest = null,	// Some icons
 						  breeze = null, stench = null, wumpus = null, pit = null, unknown = null,
 						  safe = null, gold = null, grabbed_gold = null;
+	private volatile int move_duration = 400;									// Milliseconds that an agent waits after each move, 0 for full speed
 	private String icon_dir = "./resources/icons/";								// Directory that holds the icons
 	private Font font = new Font( Font.SANS_SERIF,Font.BOLD, 20), small_font = new Font(Font.SANS_SERIF,Font.PLAIN, 10); // Fonts for titles and notice board
 	private WumpusState[] believed_worlds = null;								// Believed worlds of the agents
@@ -49,7 +56,7 @@ public class WumpusGUI extends JPanel implements MouseListener {
 	/**
 	 * Constructor. Loads all the images.
 	 * @param wumpus The Wumpus world of which this is the GUI.
-	 * @param fps The frame rate per second for updating the position of agents.
+	 * @param fps The frame rate per second for updating the position of agents while they move.
 	 */
 	public WumpusGUI(Wumpus wumpus, int fps){
 		File f = new File(icon_dir);
@@ -63,11 +70,11 @@ public class WumpusGUI extends JPanel implements MouseListener {
 				icon_dir = jfc.getSelectedFile().getPath()+"/"; 			// Set the directory with the images
 		}
 		current_state = wumpus;						
-		width = wumpus.getWorld().length;									// Get width and height of the world
-		height = wumpus.getWorld()[0].length;
+		width = wumpus.getWidth();											// Get width and height of the world
+		height = wumpus.getHeight();
 		cell_size = 48;
-		numbers = new BufferedImage[Math.max(height,width)];				// Init border number's array
-		for(int i = 1; i <= numbers.length; i++) numbers[i-1] = getIcon(icon_dir+i+".png"); // Load the border numbers
+		numbers = new BufferedImage[10];									// Init the digits of the border numbers
+		for(int i = 0; i < numbers.length; i++) numbers[i] = getIcon(icon_dir+i+".png"); // Load the digits
 		notice_board = getIcon(icon_dir+"log.png");							// Get the different icons
 		reset = getIcon(icon_dir+"reset.png");
 		bigchest = getIcon(icon_dir+"filledlarge.png");
@@ -79,7 +86,7 @@ public class WumpusGUI extends JPanel implements MouseListener {
 		safe = getIcon(icon_dir+"safe.png");
 		gold = getIcon(icon_dir+"gold.png"); 
 		grabbed_gold = getIcon(icon_dir+"grabbed_gold.png"); 
-		agent_status_options = new BufferedImage[][]						// Get the agent icons, 0=blue,1=red,2=yellow,3=green
+		agent_status_options = new BufferedImage[][]						// Get the agent icons, 0=blue,1=red,2=yellow,3=green, then repeat
 				{{getIcon(icon_dir+"Bangrylarge.png"),getIcon(icon_dir+"Bcontentlarge.png"),getIcon(icon_dir+"Bhappylarge.png")},
 				 {getIcon(icon_dir+"Rangrylarge.png"),getIcon(icon_dir+"Rcontentlarge.png"),getIcon(icon_dir+"Rhappylarge.png")}, 
 				 {getIcon(icon_dir+"Yangrylarge.png"),getIcon(icon_dir+"Ycontentlarge.png"),getIcon(icon_dir+"Yhappylarge.png")},
@@ -90,59 +97,107 @@ public class WumpusGUI extends JPanel implements MouseListener {
 				 {getIcon(icon_dir+"Yangry.png"),getIcon(icon_dir+"Ycontent.png"),getIcon(icon_dir+"Yhappy.png")},
 				 {getIcon(icon_dir+"Gangry.png"),getIcon(icon_dir+"Gcontent.png"),getIcon(icon_dir+"Ghappy.png")}};
 		chests = new BufferedImage[]{getIcon(icon_dir+"treasure.png"),getIcon(icon_dir+"filled.png")};
-		believed_worlds = new WumpusState[4];								// Initialize believed worlds
-		for(int i = 0; i < 4; i++){											// Create instance and fill with the unknown
-			believed_worlds[i] = new WumpusState();
-			believed_worlds[i].agentnr = i;
-			believed_worlds[i].fillUnknown(width, height, (width+2)*cell_size, cell_size, cell_size); 
+		int agent_amount = wumpus.getAgentAmount();
+		believed_worlds = new WumpusState[agent_amount];					// Initialize believed worlds
+		for(int i = 0; i < agent_amount; i++){								// Create instance and fill with the unknown
+			believed_worlds[i] = new WumpusState(agent_amount, width, height, (width+2)*cell_size, cell_size, cell_size);
+			believed_worlds[i].setAgentnr(i);
+			believed_worlds[i].fillUnknown(); 
 		}
-		real_world = new WumpusState();										// Initialize the real world
-		real_world.fillRealWorld(wumpus, width, height, cell_size, cell_size, cell_size);
-		frame_caller = new FrameCaller(this, fps);							// Create update runnable
+		real_world = new WumpusState(agent_amount, width, height, cell_size, cell_size, cell_size); // Initialize the real world
+		real_world.fillRealWorld(wumpus);
+		animator = new Animator(fps);										// Create update runnable
+		setPreferredSize(new Dimension(cell_size*(2*width+3)+notice_board.getWidth(), cell_size*(height+4)+agent_status_options[0][0].getHeight()));
 	}
 	
 	/** Start updates and animation */
 	public void start_animation(){
-		frame_caller.setHalt(false);					// Will prevent the run-loop from halting
-		frame_caller_thread = new Thread(frame_caller); // Create new thread
-		frame_caller_thread.start();					// Start it
+		animator.setHalt(false);						// Will prevent the run-loop from halting
+		animator_thread = new Thread(animator);			// Create new thread
+		animator_thread.start();						// Start it
+		animator.wake();								// Show the agents that were placed before the start
 	}
 	
 	/** Stop updates and animation */
 	public void stop_animation(){
-		frame_caller.setHalt(true); 					// Will stop the current run-loop
+		animator.setHalt(true); 						// Will stop the current run-loop
 	}
 	
-	/** Calls the world states to update the position of agents. */
-	public synchronized void frame_update(){
-		real_world.frame_call();// Update all positions
-		for(int i = 0; i < 4; i++) believed_worlds[i].frame_call();
+	/**
+	 * Calls the world states to update the position of agents. Only the agents that move are repainted.
+	 * @return Whether an agent is still moving, in which case another frame is needed.
+	 */
+	public boolean frame_update(){
+		boolean moving = animate(real_world, true);	// Update all positions
+		for(int i = 0; i < believed_worlds.length; i++) moving |= animate(believed_worlds[i], i == selected_agent);
+		return moving;
 	}
 	
 	/** Reload the Wumpus state into its visual equivalent and paint it. */
-	public synchronized void updateRealWorld(){
-		real_world.fillRealWorld(current_state, width, height, cell_size, cell_size, cell_size);
+	public void updateRealWorld(){
+		real_world.fillRealWorld(current_state);
+		animator.wake();
 		repaint();
 	}
 	
+	/** Reload one cell of the Wumpus state and paint it. */
+	public void updateRealCell(int x, int y){
+		real_world.updateRealCell(current_state, x, y);
+		repaintCell(real_world, x, y);
+	}
+	
+	/** Reload the position of an agent from the Wumpus state. */
+	public void updateRealAgent(int agent){
+		real_world.updateRealAgent(current_state, agent);	// Repainted by the animation
+		animator.wake();
+	}
+	
 	/**
-	 * Remove all data of the visual world of an agent.
-	 * @param agent The agent of which the belief is cleared.
+	 * Let an agent wait the move duration after a move, on its own thread, which sets the speed of each agent. The
+	 * animation does not depend on it: agents that move faster than they are shown are played back from a queue (see
+	 * WumpusState).
+	 * @param agent The agent that moved.
 	 */
-	public synchronized void clearBelievedWorld(int agent){
-		believed_worlds[agent].clearSubjective();
-		believed_worlds[agent].fillUnknown(width, height, (width+2)*cell_size, cell_size, cell_size);
+	public void awaitAnimation(int agent){
+		if(move_duration <= 0) return;
+		try{ Thread.sleep(move_duration); } catch(InterruptedException e){ Thread.currentThread().interrupt(); }
 	}
 	
 	/**
-	 * Add an object to an agents believed world representation.
+	 * Set how long agents wait after each move. 
+	 * @param move_duration Milliseconds per move. The default of 400 lets each walk finish before the next move, 0 lets 
+	 * agents run at full speed.
+	 */
+	public void setMoveDuration(int move_duration){ this.move_duration = move_duration; }
+	
+	/** Only the believed world of the selected agent is shown. */
+	public boolean isShowingBelief(int agent){ return agent == selected_agent; }
+	
+	/**
+	 * Set the objects of cells of an agent's believed world representation.
 	 * @param agent The id of the agent whose believed world is modified.
-	 * @param x x position of the object.
-	 * @param y y position of the object.
-	 * @param obj The object to be added, use constants from the Wumpus class, such as Wumpus.GOLD. 
+	 * @param cells The cells as x*height+y.
+	 * @param objects Per cell the objects, as a combination of constants from the Wumpus class, such as Wumpus.GOLD.
+	 * @param amount Number of cells.
+	 * @param full Whether the cells replace the whole believed world.
 	 */
-	public synchronized void addToBelievedWorld(int agent, int x, int y, int obj){
-		believed_worlds[agent].add((width+2+x)*cell_size, (height-y)*cell_size, obj); 
+	public void setBelievedCells(int agent, int[] cells, int[] objects, int amount, boolean full){
+		WumpusState s = believed_worlds[agent];
+		s.setCells(cells, objects, amount, full);
+		if(agent != selected_agent) return;
+		if(full) repaint();
+		else for(int i = 0; i < amount; i++) repaintCell(s, cells[i]/height, cells[i]%height);
+	}
+	
+	/**
+	 * Set the position of an agent in its own believed world representation.
+	 * @param agent The id of the agent.
+	 * @param x x position of the agent.
+	 * @param y y position of the agent.
+	 */
+	public void setBelievedPosition(int agent, int x, int y){
+		believed_worlds[agent].setAgent(agent, x, y);
+		if(believed_worlds[agent].isMoving()) animator.wake();
 	}
 	
 	/**
@@ -150,9 +205,10 @@ public class WumpusGUI extends JPanel implements MouseListener {
 	 * @param agent The agent whose mood is changed.
 	 * @param mood Use 0 for angry, 1 for content, 2 for happy.
 	 */
-	public synchronized void updateMood(int agent, int mood){
-		believed_worlds[agent].moods[agent] = mood; // Change the mood in the believed world
-		real_world.moods[agent] = mood; 			// But also in the real world (for the correct visual proxy icon)
+	public void updateMood(int agent, int mood){
+		believed_worlds[agent].setMood(agent, mood);	// Change the mood in the believed world
+		real_world.setMood(agent, mood); 				// But also in the real world (for the correct visual proxy icon)
+		repaint();
 	}
 	
 	/**
@@ -162,48 +218,40 @@ public class WumpusGUI extends JPanel implements MouseListener {
 	 * @param msg Message itself.
 	 * @return Returns true if the message was succesfully added.
 	 */
-	public synchronized boolean addNote(int agent, String topic, String msg){
-		WumpusState s = believed_worlds[agent]; 					// Get the believed world
-		synchronized(s.notices){									// Synchronize to prevent ConcurrentModExceptions
-			if(s.labeled_notices.get(topic)==null){					// First message on the topic
-				if(s.notices.size()==11) return false;				// Check if maximum is reached
-				s.labeled_notices.put(topic, s.notices.size());		// Add to data
-				s.notices.add("");
-			}
-			s.notices.remove((int)s.labeled_notices.get(topic));	// Remove previous message on this topic
-			s.notices.add((int)s.labeled_notices.get(topic),msg);	// Add new one
-		}
+	public boolean addNote(int agent, String topic, String msg){
+		if(!believed_worlds[agent].addNote(topic, msg)) return false;	// The maximum is reached
+		if(agent == selected_agent) repaint(cell_size*(2*width+2), cell_size, notice_board.getWidth(), notice_board.getHeight());
 		return true;
 	} 
 	
 	/**
-	 * Paints the real world and the believed world of the selected agent.
+	 * Paints the real world and the believed world of the selected agent. Only the part of the panel that is dirty (the
+	 * clip) is painted. Cells are drawn from cached tiles that hold the grid lines and icons of a combination of objects.
 	 */
 	public void paint(Graphics graphics){
 		Graphics2D g = (Graphics2D)graphics;
-		g.setBackground(Color.white); 
-		g.clearRect(0, 0,getWidth(), getHeight()); 												// Clear the panel
-		g.addRenderingHints(new RenderingHints(RenderingHints.KEY_ANTIALIASING,					// Anti-alias looks pretty
-				RenderingHints.VALUE_ANTIALIAS_ON));
+		Rectangle clip = g.getClipBounds();
+		if(clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+		g.setColor(Color.white);
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);									// Clear the dirty part of the panel
+		g.setColor(getForeground());
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,								// Anti-alias the titles, the rest comes from images
+				RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 		
-		// Draw lines
-		for(int y = 1; y <= height+1; y++){
-			g.drawLine(cell_size, y*cell_size, (width+1)*cell_size, y*cell_size); 			  	// Real world lines
-			g.drawLine(cell_size*(width+2), y*cell_size, (2*width+2)*cell_size, y*cell_size); 	// Believed world lines
-		}
-		for(int x = 1; x <= width+1; x++){
-			g.drawLine(x*cell_size,cell_size,x*cell_size,(height+1)*cell_size);						// Real world lines
-			g.drawLine((x+width+1)*cell_size,cell_size,(x+width+1)*cell_size,(height+1)*cell_size); // Believed world lines
-		}
+		// Draw the closing lines of the grids, the other lines are part of the tiles
+		g.drawLine(cell_size, (height+1)*cell_size, (width+1)*cell_size, (height+1)*cell_size);			// Real world lines
+		g.drawLine((width+1)*cell_size, cell_size, (width+1)*cell_size, (height+1)*cell_size);
+		g.drawLine(cell_size*(width+2), (height+1)*cell_size, (2*width+2)*cell_size, (height+1)*cell_size); // Believed world lines
+		g.drawLine((2*width+2)*cell_size, cell_size, (2*width+2)*cell_size, (height+1)*cell_size);
 		g.drawRect(cell_size, cell_size, cell_size * (width*2+1), cell_size * (height+1));	  	// Border rectangle
 		
 		// Draw numbers
-		for(int y = 0; y < height; y++) 														// The vertical numbers
-			g.drawImage(numbers[y], cell_size*(width+1), (height-y)*cell_size, numbers[y].getWidth(), numbers[y].getHeight(), null);
-		for(int x = 0; x < width; x++){ 														// The horizontal numbers
-			g.drawImage(numbers[x], (x+1)*cell_size, (height+1)*cell_size, numbers[x].getWidth(), numbers[x].getHeight(), null);
-			g.drawImage(numbers[x], (width+x+2)*cell_size, (height+1)*cell_size, numbers[x].getWidth(), numbers[x].getHeight(), null);
-		}
+		for(int y = lowestRow(real_world, clip); y <= highestRow(real_world, clip); y++)			// The vertical numbers
+			g.drawImage(getLabel(y+1), cell_size*(width+1), (height-y)*cell_size, null);
+		for(int x = firstColumn(real_world, clip); x <= lastColumn(real_world, clip); x++)		// The horizontal numbers
+			g.drawImage(getLabel(x+1), (x+1)*cell_size, (height+1)*cell_size, null);
+		for(int x = firstColumn(believed_worlds[selected_agent], clip); x <= lastColumn(believed_worlds[selected_agent], clip); x++)
+			g.drawImage(getLabel(x+1), (width+x+2)*cell_size, (height+1)*cell_size, null);
 		
 		// Draw titles
 		g.setFont(font);
@@ -217,61 +265,144 @@ public class WumpusGUI extends JPanel implements MouseListener {
 		//g.drawImage(reset,cell_size*(2*width), (height+3)*cell_size,null);   // Yellow reset button in 2apl not needed as it has its own reset button
 		
 		// Draw the world states
-		drawWumpusState(g, believed_worlds[selected_agent], true);								// World of the selected agent
-		drawWumpusState(g, real_world, false);													// Real world representation
+		drawWumpusState(g, believed_worlds[selected_agent], true, clip);						// World of the selected agent
+		drawWumpusState(g, real_world, false, clip);											// Real world representation
 	} 
 	
 	/**
 	 * Draw the visual representation of a Wumpus world. If the world is a believed world from an agent, then it will also draw the 
 	 * big status icon. The GUI adds a grabbed gold if the agent is content and a filled treasure chest if it is happy.
+	 * Everything is drawn from one snapshot of the state, so agents that change it meanwhile are not waited for.
 	 * @param g The object to draw upon.
 	 * @param state The state to draw.
 	 * @param subjective True if the state is a belief state of an agent, false otherwise.
+	 * @param clip The part of the panel to draw, cells outside of it are skipped.
 	 */
-	public synchronized void drawWumpusState(Graphics2D g, WumpusState state, boolean subjective){
-		drawArray(state.unknown, unknown, g);							// Draw the various objects
-		drawArray(state.breezes, breeze, g);
-		drawArray(state.pits, pit, g);
-		drawArray(state.stenches, stench, g);
-		drawArray(state.wumpus, wumpus, g);
-		drawArray(state.chests, chests[0], g);
-		drawArray(state.filled_chests, chests[1], g);
-		drawArray(state.goldbars, gold, g);
-		drawArray(state.safe, safe, g);
-		for(int i = 0; i < 4; i++)										// For the agents
-			if(state.agents[i]!=null){ 									// If they are present
-				BufferedImage icon = small_agent[i][state.moods[i]];	// Select image based on their mood
-				g.drawImage(icon, state.shown_agents[i].width, state.shown_agents[i].height, icon.getWidth(), icon.getHeight(), null);
+	public void drawWumpusState(Graphics2D g, WumpusState state, boolean subjective, Rectangle clip){
+		WumpusState.Snapshot snapshot = state.getSnapshot();
+		int[] shown = state.getShownAgents();
+		for(int x = firstColumn(state, clip); x <= lastColumn(state, clip); x++)	// Draw the tiles of the cells in the clip
+			for(int y = lowestRow(state, clip); y <= highestRow(state, clip); y++)
+				g.drawImage(getTile(snapshot.getCell(x, y)), state.getPixelX(x), state.getPixelY(y), null);
+		for(int i = 0; i < snapshot.getAgentAmount(); i++)				// For the agents
+			if(snapshot.hasAgent(i)){ 									// If they are present
+				BufferedImage icon = small_agent[i%4][snapshot.getMood(i)];	// Select image based on their mood and color
+				if(clip.intersects(shown[i*2], shown[i*2+1], icon.getWidth(), icon.getHeight()))
+					g.drawImage(icon, shown[i*2], shown[i*2+1], icon.getWidth(), icon.getHeight(), null);
 			}
 		if(subjective){													// Believed worlds draw status images and notes
-			BufferedImage status = agent_status_options[state.agentnr][state.moods[state.agentnr]];
+			int agent = state.getAgentnr();
+			BufferedImage status = agent_status_options[agent%4][snapshot.getMood(agent)];
 			g.drawImage(status,cell_size,(height+3)*cell_size,status.getWidth(),status.getHeight(),null);
-			if(state.moods[state.agentnr]==2) 							// Draw big chest if the agent is happy
+			if(snapshot.getMood(agent)==2) 								// Draw big chest if the agent is happy
 				g.drawImage(bigchest,cell_size*3,(height+3)*cell_size,status.getWidth(),status.getHeight(),null);
-			else if(state.moods[state.agentnr]==1)						// Draw grabbed gold if agent is content
+			else if(snapshot.getMood(agent)==1)							// Draw grabbed gold if agent is content
 				g.drawImage(grabbed_gold,cell_size,(height+3)*cell_size,status.getWidth(),status.getHeight(),null);
 			g.setFont(small_font); 										// Set font for notices
-			synchronized(state.notices){
-				int y = cell_size+50;									// Start line
-				for(String s : state.notices){							// Draw each notice
-					g.drawString(s, cell_size*(2*width+2)+50,y);
-					y += g.getFontMetrics().getHeight();				// Update line position
-				}
-			} 
+			int y = cell_size+50;										// Start line
+			for(int i = 0; i < snapshot.getNoticeAmount(); i++){		// Draw each notice
+				g.drawString(snapshot.getNotice(i), cell_size*(2*width+2)+50,y);
+				y += g.getFontMetrics().getHeight();					// Update line position
+			}
 		}
 	}
 	
+	// The columns and rows of a world that overlap with the clip. The highest row is drawn at the top.
+	private int firstColumn(WumpusState s, Rectangle clip){ return Math.max(0, cellAt(clip.x-s.getPixelX(0))); }
+	private int lastColumn(WumpusState s, Rectangle clip){ return Math.min(width-1, cellAt(clip.x+clip.width-1-s.getPixelX(0))); }
+	private int lowestRow(WumpusState s, Rectangle clip){ return Math.max(0, height-1-cellAt(clip.y+clip.height-1-s.getPixelY(height-1))); }
+	private int highestRow(WumpusState s, Rectangle clip){ return Math.min(height-1, height-1-cellAt(clip.y-s.getPixelY(height-1))); }
+	/** The number of the cell that holds a pixel, counted from the first cell. Pixels before the first cell give negative numbers. */
+	private int cellAt(int pixel){ return pixel >= 0 ? pixel/cell_size : (pixel+1)/cell_size-1; }
+	
+	/** Get the tile of a combination of objects: a white cell with its top and left grid line and the icons of the objects. */
+	private BufferedImage getTile(int objects){
+		objects &= DRAWN;
+		BufferedImage tile = tiles.get(objects);
+		if(tile == null){
+			tile = new BufferedImage(cell_size, cell_size, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = tile.createGraphics();
+			g.setColor(Color.white);
+			g.fillRect(0, 0, cell_size, cell_size);
+			g.setColor(getForeground());
+			g.drawLine(0, 0, cell_size, 0);
+			g.drawLine(0, 0, 0, cell_size);
+			drawCell(g, objects, 0, 0);
+			g.dispose();
+			tiles.put(objects, tile);
+		}
+		return tile;
+	}
+	
+	/** Get the image of a border number. Numbers with more than one digit are made from smaller digits. */
+	private BufferedImage getLabel(int n){
+		BufferedImage label = labels.get(n);
+		if(label == null){
+			String digits = Integer.toString(n);
+			int size = cell_size/digits.length();
+			label = new BufferedImage(cell_size, cell_size, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = label.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			for(int i = 0; i < digits.length(); i++)
+				g.drawImage(numbers[digits.charAt(i)-'0'], i*size, (cell_size-size)/2, size, size, null);
+			g.dispose();
+			labels.put(n, label);
+		}
+		return label;
+	}
+	
+	/** Repaint the part of the panel that shows a cell. */
+	private void repaintCell(WumpusState s, int x, int y){ repaint(s.getPixelX(x), s.getPixelY(y), cell_size, cell_size); }
+	
+	/**
+	 * Move the agents of a world one frame further. If the world is shown, then one repaint is requested that covers where 
+	 * the moving agents were and where they are.
+	 * @return Whether an agent of the world is still moving.
+	 */
+	private boolean animate(WumpusState s, boolean shown){
+		if(!s.isMoving()) return false;										// Nothing moves, nothing to do
+		int[] before = s.getShownAgents();
+		boolean moving = s.frame_call();
+		int[] after = s.getShownAgents();
+		Rectangle dirty = null;
+		for(int i = 0; i < after.length/2; i++)
+			if(before[i*2] != after[i*2] || before[i*2+1] != after[i*2+1]){
+				dirty = addAgent(dirty, before, i);
+				dirty = addAgent(dirty, after, i);
+			}
+		if(shown && dirty != null) repaint(dirty);
+		return moving;
+	}
+	
+	/** Add the shown area of an agent to a rectangle, or create one if it is null. */
+	private Rectangle addAgent(Rectangle area, int[] shown, int agent){
+		Rectangle r = new Rectangle(shown[agent*2], shown[agent*2+1], small_agent[agent%4][0].getWidth(), small_agent[agent%4][0].getHeight());
+		if(area == null) return r;
+		area.add(r);
+		return area;
+	}
+	
 	/**
-	 * Draw an array of objects. Given an array of dimensions, a canvas and an image this method will paint for 
-	 * each (x,y) from the dimensions the image on the canvas.
-	 * @param positions Positions of the image.
-	 * @param image Image to be drawn.
+	 * Draw the objects of one cell. Gold in a chest is drawn as a filled chest.
 	 * @param g Canvas to paint on.
+	 * @param objects The objects of the cell, encoded as in the Wumpus class.
+	 * @param x Pixel x of the cell.
+	 * @param y Pixel y of the cell.
 	 */
-	public void drawArray(List<Dimension> positions, BufferedImage image, Graphics2D g){
-		for(Dimension pos : positions){
-			g.drawImage(image, pos.width, pos.height, image.getWidth(), image.getHeight(), null);
-		}
+	public void drawCell(Graphics2D g, int objects, int x, int y){
+		if((objects&Wumpus.UNKNOWN) != 0) drawImage(g, unknown, x, y);
+		if((objects&Wumpus.BREEZE) != 0) drawImage(g, breeze, x, y);
+		if((objects&Wumpus.PIT) != 0) drawImage(g, pit, x, y);
+		if((objects&Wumpus.STENCH) != 0) drawImage(g, stench, x, y);
+		if((objects&Wumpus.WUMPUS) != 0) drawImage(g, wumpus, x, y);
+		if((objects&(Wumpus.CHEST|Wumpus.GOLD)) == (Wumpus.CHEST|Wumpus.GOLD)) drawImage(g, chests[1], x, y);
+		else if((objects&Wumpus.CHEST) != 0) drawImage(g, chests[0], x, y);
+		else if((objects&Wumpus.GOLD) != 0) drawImage(g, gold, x, y);
+		if((objects&Wumpus.SAFE) != 0) drawImage(g, safe, x, y);
+	}
+	
+	private void drawImage(Graphics2D g, BufferedImage image, int x, int y){
+		g.drawImage(image, x, y, image.getWidth(), image.getHeight(), null);
 	}
 	
 	/**
@@ -285,55 +416,72 @@ public class WumpusGUI extends JPanel implements MouseListener {
 	}
 	
 	/**
-	 * Class to call the update method of the GUI.
-	 * @author Bas Testerink, Utrecht University, The Netherlands
+	 * Class to call the update method of the GUI while agents move. The thread waits without holding the GUI lock until 
+	 * it is woken because an agent got a new position. Then frames are updated at the frame rate until all agents are 
+	 * where they should be, after which it waits again. Wakes that arrive during the frames only cause another check.
+	 * @author Bas Testerink
 	 *
 	 */
-	private class FrameCaller implements Runnable {
-		WumpusGUI panel; 		// Panel on which the world is drawn
-		int fps;		 		// Frames per second
-		boolean halt = false;   // Halt condition
+	private class Animator implements Runnable {
+		private int fps;		 		// Frames per second
+		private boolean halt = false;   // Halt condition
+		private boolean woken = false;	// Whether an agent may have started to move since the last frame update
 		
 		/**
 		 * Constructor.
-		 * @param panel The WumpusGUI to call.
-		 * @param fps Frames per second. 30 means 30 times a second WumpusGUI.frame_update() will be called.
+		 * @param fps Frames per second. 30 means 30 times a second WumpusGUI.frame_update() will be called while agents move.
 		 */
-		public FrameCaller(WumpusGUI panel, int fps){
-			this.panel = panel; 
+		public Animator(int fps){
 			this.fps = fps;
 		}
 		
 		public void run(){
 			try{
-				while(!halt){
-					Thread.sleep(1000/fps); // Sleep a bit
-					panel.frame_update();   // Update all data
-					panel.repaint();		// Repaint the state
+				while(awaitMovement()){
+					do Thread.sleep(1000/fps);							// Sleep a bit
+					while(frame_update() && !isHalted());				// Update all data and repaint what moved
 				}
 			} catch(Exception e){ e.printStackTrace(); }
 		}
 		
+		/** Wait until the animator is woken or halted. Returns false if it is halted. */
+		private synchronized boolean awaitMovement() throws InterruptedException {
+			while(!woken && !halt) wait();
+			woken = false;
+			return !halt;
+		}
+		
+		/** Signal that an agent may have started to move. */
+		public synchronized void wake(){
+			woken = true;
+			notifyAll();
+		}
+		
 		/**
 		 * If this runnable is running and setHalt(true) is called, then this runnable will break the run loop.
 		 * @param b New value of halt.
 		 */
-		public void setHalt(boolean b){
+		public synchronized void setHalt(boolean b){
 			halt = b;
+			notifyAll();
 		}
+		
+		private synchronized boolean isHalted(){ return halt; }
 	}
 
 	@Override
 	public void mouseClicked(MouseEvent e) {
 		int x = e.getX();
 		int y = e.getY();
-		for(int i = 0; i < 4; i++){										// For the agents
-			int agentX = real_world.shown_agents[i].width;
-			int agentY = real_world.shown_agents[i].height;
+		int[] shown = real_world.getShownAgents();
+		for(int i = 0; i < shown.length/2; i++){						// For the agents
+			int agentX = shown[i*2];
+			int agentY = shown[i*2+1];
 			if(x > agentX && y > agentY && 
-			   x < agentX + small_agent[i][0].getWidth() &&
-			   y < agentY + small_agent[i][0].getHeight()){
+			   x < agentX + small_agent[i%4][0].getWidth() &&
+			   y < agentY + small_agent[i%4][0].getHeight()){
 				selected_agent = i; 
+				repaint();
 			}
 		}
 	}
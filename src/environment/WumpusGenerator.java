@@ -0,0 +1,190 @@
+package environment;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+/**
+ * Procedural generator for Wumpus worlds. Worlds are built directly into a Wumpus instance, so large worlds do not have
+ * to be written to and parsed from a file. Generation is deterministic for a given seed and settings.
+ *
+ * Whether a cell holds a pit, gold or a chest is decided by hashing the seed with the cell's coordinates. A cell's
+ * content therefore does not depend on the order in which cells are generated. The wumpus and the agents are placed
+ * with a random generator that is seeded with the same seed. Agents never start on a pit or on the wumpus. Breezes and
+ * stenches follow from the pits and the wumpus in the neighboring cells.
+ *
+ * Because every cell can be computed on its own, the generator fills the chunks of a world only when they are first
+ * used (see ChunkedWorld). Generating a world only places the wumpus and the agents. Counting the gold takes time but
+ * no memory per cell, so it is done when the world first needs the amount.
+ *
+ * @author Bas Testerink
+ */
+public class WumpusGenerator implements ChunkSource {
+	private long seed;												// Seed of the world
+	private int width, height, agents = 4;							// Dimensions and number of agents
+	private double pitDensity = 0.1, goldDensity = 0.02, chestDensity = 0.005; // Chance per cell on pits, gold and chests
+	private int[] agent_locations;									// Start locations of the agents as (x,y) pairs
+	private int wumpusX, wumpusY;									// Location of the wumpus
+	private boolean extraChest;										// Whether the first agent's start has a chest because there was none
+	private Set<Long> clearedPits = new HashSet<Long>();			// Cells whose pit was removed to make room for an agent or the wumpus
+
+	public WumpusGenerator(long seed, int width, int height){
+		this.seed = seed;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Generate a new world into a Wumpus instance. Resets of the instance regenerate the same world.
+	 * @param w The Wumpus instance to fill.
+	 */
+	public void generate(Wumpus w){
+		place();
+		w.setWorld(new ChunkedWorld(this), width, height, agent_locations, agents, this);
+	}
+
+	/** Count the gold of the generated world, without generating its cells. */
+	int countGold(){
+		int gold = 0;
+		for(int x = 0; x < width; x++)										// The wumpus ate any gold on its cell
+			for(int y = 0; y < height; y++)
+				if((base(x, y) & Wumpus.GOLD) != 0 && (x != wumpusX || y != wumpusY)) gold++;
+		return gold;
+	}
+
+	/** Place the agents and the wumpus. */
+	void place(){
+		clearedPits.clear();
+		Random random = new Random(seed);
+		agent_locations = new int[agents*2];
+		for(int i = 0; i < agents; i++){									// Agents start on a spot without a pit
+			int[] spot = freeSpot(random);
+			agent_locations[i*2] = spot[0];
+			agent_locations[i*2+1] = spot[1];
+		}
+		int[] spot = null;
+		do{ spot = freeSpot(random); }										// The wumpus is not on a starting spot
+		while(isAgentLocation(spot[0], spot[1]) && width*height > agents);
+		wumpusX = spot[0];
+		wumpusY = spot[1];
+		extraChest = !hasChest();											// Make sure that the gold can be delivered
+	}
+
+	/**
+	 * Fill a chunk of a world. Each cell gets its pit, gold and chest, the wumpus and the extra chest if it is on the cell,
+	 * and breezes and stenches from its four neighbors.
+	 */
+	public void fill(int x0, int y0, int[] cells){
+		int size = ChunkedWorld.CHUNK+2;									// The chunk with a border of one cell
+		int[] around = new int[size*size];
+		for(int i = 0; i < size; i++)
+			for(int j = 0; j < size; j++)
+				around[i*size+j] = cell(x0+i-1, y0+j-1);
+		for(int i = 1; i < size-1 && x0+i-1 < width; i++){
+			for(int j = 1; j < size-1 && y0+j-1 < height; j++){
+				int c = around[i*size+j];
+				int n = around[(i-1)*size+j] | around[(i+1)*size+j] | around[i*size+j-1] | around[i*size+j+1];
+				if((n & Wumpus.PIT) != 0) c |= Wumpus.BREEZE;
+				if((n & Wumpus.WUMPUS) != 0) c |= Wumpus.STENCH;
+				cells[((i-1)<<ChunkedWorld.SHIFT)|(j-1)] = c;
+			}
+		}
+	}
+
+	/** Content of a cell without breezes and stenches, 0 outside of the world. */
+	private int cell(int x, int y){
+		if(x < 0 || y < 0 || x >= width || y >= height) return 0;
+		int c = base(x, y);
+		if(x == wumpusX && y == wumpusY) c = (c | Wumpus.WUMPUS) & ~(Wumpus.GOLD|Wumpus.GLITTER); // Gold that is eaten by the wumpus cannot be fetched
+		if(extraChest && agent_locations.length > 0 && x == agent_locations[0] && y == agent_locations[1]) c |= Wumpus.CHEST;
+		return c;
+	}
+
+	/** Pit, gold and chest of a cell as they are sampled, unless the pit was cleared. */
+	private int base(int x, int y){
+		if(sample(x, y, 0) < pitDensity) return clearedPits.contains(key(x, y)) ? 0 : Wumpus.PIT;
+		int c = sample(x, y, 1) < goldDensity ? Wumpus.GOLD | Wumpus.GLITTER : 0;
+		if(sample(x, y, 2) < chestDensity) c |= Wumpus.CHEST;
+		return c;
+	}
+
+	/** Pick a random spot without a pit. If all spots are taken then a pit is removed. */
+	private int[] freeSpot(Random random){
+		for(int tries = 0; tries < 1000; tries++){
+			int x = random.nextInt(width);
+			int y = random.nextInt(height);
+			if((base(x, y) & Wumpus.PIT) == 0) return new int[]{x, y};
+		}
+		int x = random.nextInt(width);
+		int y = random.nextInt(height);
+		clearedPits.add(key(x, y));
+		return new int[]{x, y};
+	}
+
+	private boolean isAgentLocation(int x, int y){
+		for(int i = 0; i < agents; i++)
+			if(agent_locations[i*2] == x && agent_locations[i*2+1] == y) return true;
+		return false;
+	}
+
+	/** Whether any cell has a chest, stops at the first one. */
+	private boolean hasChest(){
+		if(chestDensity <= 0) return false;
+		for(int x = 0; x < width; x++)
+			for(int y = 0; y < height; y++)
+				if((base(x, y) & Wumpus.CHEST) != 0) return true;
+		return false;
+	}
+
+	/** Write the seed and settings, for a checkpoint. */
+	void write(DataOutput out) throws IOException {
+		out.writeLong(seed);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(agents);
+		out.writeDouble(pitDensity);
+		out.writeDouble(goldDensity);
+		out.writeDouble(chestDensity);
+	}
+
+	/** Read a generator that <code>write</code> wrote. It is ready to fill chunks of the same world. */
+	static WumpusGenerator read(DataInput in) throws IOException {
+		WumpusGenerator g = new WumpusGenerator(in.readLong(), in.readInt(), in.readInt());
+		g.agents = in.readInt();
+		g.pitDensity = in.readDouble();
+		g.goldDensity = in.readDouble();
+		g.chestDensity = in.readDouble();
+		g.place();
+		return g;
+	}
+
+	private static long key(int x, int y){ return ((long)x<<32) | (y&0xffffffffL); }
+
+	/**
+	 * Uniform sample in [0,1) for a cell. The seed, coordinates and layer (pits/gold/chests) are mixed with the SplitMix64
+	 * finalizer, which spreads every input bit over the output.
+	 */
+	private double sample(int x, int y, int layer){
+		long h = mix(seed ^ mix((((long)x << 32) | (y & 0xffffffffL)) * 3 + layer));
+		return (h >>> 11) * 0x1.0p-53;
+	}
+
+	private static long mix(long z){
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/* Getters/setters */
+	public long getSeed(){ return seed; }
+	public int getWidth(){ return width; }
+	public int getHeight(){ return height; }
+	public int getAgents(){ return agents; }						public void setAgents(int agents){ this.agents = agents; }
+	public double getPitDensity(){ return pitDensity; }				public void setPitDensity(double d){ pitDensity = d; }
+	public double getGoldDensity(){ return goldDensity; }			public void setGoldDensity(double d){ goldDensity = d; }
+	public double getChestDensity(){ return chestDensity; }			public void setChestDensity(double d){ chestDensity = d; }
+
+	public String toString(){ return "seed:"+seed+" "+width+"x"+height; }
+}
@@ -0,0 +1,64 @@
+package environment;
+
+/**
+ * An observer is notified by the agent interface of everything that is worth showing to a spectator: changes of the
+ * real world, agent moods and the believed worlds of the agents. The WumpusGUI is the standard observer. An agent
+ * interface without an observer runs headless, i.e. without any drawing and without waiting for animations.
+ *
+ * @author Bas Testerink
+ */
+public interface WumpusObserver {
+	/** Reload the whole real world state. */
+	public void updateRealWorld();
+
+	/**
+	 * Reload one cell of the real world, called for every cell that an action changed.
+	 * @param x x position of the cell.
+	 * @param y y position of the cell.
+	 */
+	public void updateRealCell(int x, int y);
+
+	/**
+	 * Reload the position of an agent in the real world, called after it moved.
+	 * @param agent The agent that moved.
+	 */
+	public void updateRealAgent(int agent);
+
+	/**
+	 * Block until the movement of an agent has been shown.
+	 * @param agent The agent that moved.
+	 */
+	public void awaitAnimation(int agent);
+
+	/**
+	 * Update the mood of an agent.
+	 * @param agent The agent whose mood is changed.
+	 * @param mood Use 0 for angry, 1 for content, 2 for happy.
+	 */
+	public void updateMood(int agent, int mood);
+
+	/**
+	 * Whether the believed world of an agent is currently shown. Beliefs of agents that are not shown are not published.
+	 * @param agent The agent whose believed world is asked about.
+	 */
+	public boolean isShowingBelief(int agent);
+
+	/**
+	 * Set the objects of cells of the believed world of an agent.
+	 * @param agent The id of the agent whose believed world is modified.
+	 * @param cells The cells as x*height+y, with height the height of the world.
+	 * @param objects Per cell the objects that it holds, as a combination of constants from the Wumpus class, such as 
+	 * Wumpus.GOLD|Wumpus.BREEZE. Cells that the agent knows nothing about have Wumpus.UNKNOWN.
+	 * @param amount Number of cells to set.
+	 * @param full If true then the given cells replace the whole believed world, otherwise only these cells changed.
+	 */
+	public void setBelievedCells(int agent, int[] cells, int[] objects, int amount, boolean full);
+
+	/**
+	 * Set the position of an agent in its own believed world.
+	 * @param agent The id of the agent.
+	 * @param x x position of the agent.
+	 * @param y y position of the agent.
+	 */
+	public void setBelievedPosition(int agent, int x, int y);
+}
@@ -1,156 +1,277 @@
 package environment;
 
-import java.awt.Dimension;
-
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;  
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 /**
- * Instances of this class act as data containers. They hold a lot of arrays with Dimension objects that indicate where 
- * certain objects are positioned. 
- * 
+ * Instances of this class act as data containers for drawing. The objects of each cell are kept in one int per cell,
+ * encoded with the same bits as the cells of the Wumpus class (e.g. Wumpus.GOLD|Wumpus.BREEZE). Cells are numbered
+ * x*height+y. Agents are kept as pixel positions, such that they can walk from cell to cell.
+ *
+ * The data is published as immutable snapshots. A change copies the current snapshot, changes the copy and swaps it in
+ * atomically, retrying if another thread swapped first. Agents and the environment therefore never wait for painting,
+ * and a painter that reads one snapshot always sees a consistent frame. The cells are kept per column, and snapshots
+ * share the columns that did not change, so a change of a few cells only copies their columns. Where the agents are currently shown is
+ * published separately by the animation, which is the only thread that changes it.
+ *
+ * Agents may move faster than they can be animated. Every new position is therefore queued, and the animation walks the
+ * agents through their queued positions in order. Agents that are behind walk faster, and if more than MAX_QUEUED
+ * positions of an agent wait then the oldest are skipped, so that what is shown lags behind by a bounded amount.
+ *
  * @author Bas Testerink
  *
  */
 public class WumpusState {
-	public Dimension[] agents = new Dimension[4];								// Positions where the agents should be
-	public Dimension[] shown_agents = new Dimension[4];							// Positions where the agent currently are
-	public List<Dimension> goldbars = new ArrayList<Dimension>();			// Various positions of objects
-	public List<Dimension> breezes = new ArrayList<Dimension>();
-	public List<Dimension> stenches = new ArrayList<Dimension>();
-	public List<Dimension> wumpus = new ArrayList<Dimension>();
-	public List<Dimension> filled_chests = new ArrayList<Dimension>();
-	public List<Dimension> chests = new ArrayList<Dimension>(); 
-	public List<Dimension> pits = new ArrayList<Dimension>();
-	public List<Dimension> unknown = new ArrayList<Dimension>();
-	public List<Dimension> safe = new ArrayList<Dimension>();
-	public int agentnr = 0;														// The agent id whose world's representation this is
-	public int[] moods = new int[]{0,0,0,0};									// Moods of the agents in this world
-	public Map<String, Integer> labeled_notices = new HashMap<String, Integer>(); // Notice data
-	List<String> notices = new ArrayList<String>(); 
-	boolean[] has_gold = new boolean[]{false,false,false,false}, delivered_gold = new boolean[]{false,false,false,false}; // Who has/delivered gold
-	
+	public static final int MAX_NOTICES = 11;									// Number of notices that fit on the board
+	public static final int MAX_QUEUED = 8;										// Positions per agent that wait at most to be shown
+	private static final int FRAMES_PER_CELL = 3;								// Frames that an agent that is behind needs per cell
+	private static final int ABSENT = Integer.MIN_VALUE;						// Position of an agent that is not in the world
+	private int width, height;													// Dimensions of the world
+	private int startX, startY, cell_size;										// Pixel position of the world and pixel size of tiles
+	private int agentnr = 0;													// The agent id whose world's representation this is
+	private final int[] empty;													// Column without objects, shared and never changed
+	private AtomicReference<Snapshot> snapshot;									// The current cells, agents, moods and notices
+	private volatile int[] shown;												// Pixel positions (x,y) where the agents are currently shown
+	private ConcurrentLinkedQueue<int[]> moves = new ConcurrentLinkedQueue<int[]>(); // New positions (agent, pixel x, pixel y) that the animation did not take yet
+	private List<ArrayDeque<int[]>> waypoints = new ArrayList<ArrayDeque<int[]>>(); // Per agent the positions to walk through, only used by the animation
+	private volatile boolean moving = false;									// Whether the animation has positions left to walk to
+
 	/**
 	 * Constructor. Places agents outside of this world.
-	 */
-	public WumpusState(){
-		shown_agents = new Dimension[]{new Dimension(-50,-50),new Dimension(-50,-50),new Dimension(-50,-50),new Dimension(-50,-50)};
-	}
-	
-	/**
-	 * Update the positions of agents. They move towards where they should be.
-	 */
-	public void frame_call(){
-		for(int i = 0; i < 4; i++)  														// For each agent
-			if(agents[i]!=null){															// If it is in this world
-				Dimension d = shown_agents[i];												// Get its shown (x,y)
-				d.width = (int)(d.width + Math.ceil((agents[i].width-d.width)*0.2));		// Move it to where it should be
-				d.height = (int)(d.height + Math.ceil((agents[i].height-d.height)*0.2));
-			} 
-	}
-	  
-	/**
-	 * Fill the world with "unknown" symbols.
+	 * @param agent_amount Number of agents in the world.
 	 * @param width Width of the world.
 	 * @param height Height of the world.
 	 * @param startX Starting pixel x of the world.
 	 * @param startY Starting pixel y of the world.
 	 * @param cell_size Pixel size of tiles (which are squares so one int is needed).
 	 */
-	public void fillUnknown(int width, int height, int startX, int startY, int cell_size){
-		for(int x = 0; x < width; x++)
-			for(int y = 0; y < height; y++){
-				unknown.add(new Dimension(startX+x*cell_size, startY+y*cell_size));
-			}
+	public WumpusState(int agent_amount, int width, int height, int startX, int startY, int cell_size){
+		this.width = width;
+		this.height = height;
+		this.startX = startX;
+		this.startY = startY;
+		this.cell_size = cell_size;
+		empty = new int[height];
+		int[] agents = new int[agent_amount*2];
+		Arrays.fill(agents, ABSENT);
+		snapshot = new AtomicReference<Snapshot>(new Snapshot(columns(empty), agents, new int[agent_amount], new String[0], new String[0]));
+		int[] s = new int[agent_amount*2];
+		Arrays.fill(s, -50);
+		shown = s;
+		for(int i = 0; i < agent_amount; i++) waypoints.add(new ArrayDeque<int[]>());
+	}
+
+	/**
+	 * Update the positions of agents. They move towards their next queued position, a fifth of the remaining distance per
+	 * frame but at least one pixel, so they always arrive. Agents with more queued positions move at least a cell per
+	 * FRAMES_PER_CELL frames. Only called by the animation.
+	 * @return Whether an agent is still not where it should be after this frame.
+	 */
+	public boolean frame_call(){
+		for(int[] m = moves.poll(); m != null; m = moves.poll()){							// Take the new positions
+			ArrayDeque<int[]> queue = waypoints.get(m[0]);
+			queue.add(m);
+			if(queue.size() > MAX_QUEUED) queue.poll();										// Skip ahead if the agent is too far behind
+		}
+		int[] s = shown.clone();
+		boolean left = false;
+		for(int i = 0; i < waypoints.size(); i++){  										// For each agent
+			ArrayDeque<int[]> queue = waypoints.get(i);
+			int[] next = queue.peek();
+			if(next == null) continue;														// It is where it should be
+			int minimum = queue.size() > 1 ? Math.max(1, cell_size/FRAMES_PER_CELL) : 1;
+			s[i*2] += step(next[1]-s[i*2], minimum);										// Move it to its next position
+			s[i*2+1] += step(next[2]-s[i*2+1], minimum);
+			if(next[1] == s[i*2] && next[2] == s[i*2+1]) queue.poll();
+			left |= !queue.isEmpty();
+		}
+		shown = s;
+		moving = left || !moves.isEmpty();
+		return moving;
+	}
+
+	/** Whether an agent is not shown where it should be. */
+	public boolean isMoving(){ return moving || !moves.isEmpty(); }
+
+	/** A fifth of a distance, rounded away from zero, but at least the minimum and at most the distance. */
+	private static int step(int distance, int minimum){
+		int step = (int)(distance > 0 ? Math.ceil(distance*0.2) : Math.floor(distance*0.2));
+		if(Math.abs(step) < minimum) step = distance > 0 ? Math.min(minimum, distance) : Math.max(-minimum, distance);
+		return step;
 	}
-	
+
+	/** Columns that are all the same column, which may therefore never be changed. */
+	private int[][] columns(int[] column){
+		int[][] cells = new int[width][];
+		Arrays.fill(cells, column);
+		return cells;
+	}
+
+	/** Fill the world with "unknown" symbols. */
+	public void fillUnknown(){
+		int[] unknown = new int[height];
+		Arrays.fill(unknown, Wumpus.UNKNOWN);
+		int[][] cells = columns(unknown);
+		Snapshot s;
+		do s = snapshot.get();
+		while(!snapshot.compareAndSet(s, new Snapshot(cells, s.agents, s.moods, s.topics, s.notices)));
+	}
+
 	/**
 	 * Load the world with data from a Wumpus state.
 	 * @param w The Wumpus instance to represent.
-	 * @param width Width of the world.
-	 * @param height Height of the world.
-	 * @param startX Starting pixel x of the world.
-	 * @param startY Starting pixel y of the world.
-	 * @param cell_size Pixel size of tiles (which are squares so one int is needed).
 	 */
-	public void fillRealWorld(Wumpus w, int width, int height, int startX, int startY, int cell_size){
-		clearSubjective();																	// Clear the memory
-		for(int x = 0; x < width; x++)														// For each cell
-			for(int y = 0; y < height; y++){
-				int pix_x = startX+x*cell_size;												// Get its pixel x and y
-				int pix_y = startY+(height-y-1)*cell_size;
-				if(w.at(x, y, Wumpus.CHEST)&&w.at(x, y, Wumpus.GOLD)) filled_chests.add(new Dimension(pix_x,pix_y)); // Filled chest if gold is on a chest
-				else if(w.at(x, y, Wumpus.CHEST)) chests.add(new Dimension(pix_x,pix_y));	// Add the various possible symbols
-				else if(w.at(x, y, Wumpus.GOLD)) goldbars.add(new Dimension(pix_x,pix_y));
-				if(w.at(x, y, Wumpus.BREEZE)) breezes.add(new Dimension(pix_x,pix_y));
-				if(w.at(x, y, Wumpus.PIT)) pits.add(new Dimension(pix_x,pix_y));	
-				if(w.at(x, y, Wumpus.STENCH)) stenches.add(new Dimension(pix_x,pix_y));
-				if(w.at(x, y, Wumpus.WUMPUS)) wumpus.add(new Dimension(pix_x,pix_y));
-				if(w.at(x, y, Wumpus.AGENT0)) agents[0] = new Dimension(pix_x,pix_y); 
-				if(w.at(x, y, Wumpus.AGENT1)) agents[1] = new Dimension(pix_x,pix_y); 
-				if(w.at(x, y, Wumpus.AGENT2)) agents[2] = new Dimension(pix_x,pix_y); 
-				if(w.at(x, y, Wumpus.AGENT3)) agents[3] = new Dimension(pix_x,pix_y); 
-			}
+	public void fillRealWorld(Wumpus w){
+		int[][] cells = new int[width][height];
+		for(int x = 0; x < width; x++)														// Copy every cell
+			for(int y = 0; y < height; y++)
+				cells[x][y] = w.getCell(x, y);
+		int[] agents = new int[shown.length];
+		Arrays.fill(agents, ABSENT);
+		for(int i = 0; i < Math.min(agents.length/2, w.getAgentAmount()); i++){				// Agents are looked up by number
+			agents[i*2] = getPixelX(w.getX(i));
+			agents[i*2+1] = getPixelY(w.getY(i));
+		}
+		Snapshot s;
+		do s = snapshot.get();
+		while(!snapshot.compareAndSet(s, new Snapshot(cells, agents, s.moods, s.topics, s.notices)));
+		for(int i = 0; i < agents.length/2; i++)											// Show the agents at their new positions
+			if(agents[i*2] != ABSENT) moves.add(new int[]{i, agents[i*2], agents[i*2+1]});
+	}
+
+	/** Reload one cell from a Wumpus state. */
+	public void updateRealCell(Wumpus w, int x, int y){ setCell(x, y, w.getCell(x, y)); }
+
+	/** Reload the position of one agent from a Wumpus state. */
+	public void updateRealAgent(Wumpus w, int agent){
+		if(agent < shown.length/2) setAgent(agent, w.getX(agent), w.getY(agent));
 	}
-	
-	/** Reset part of the data. */
-	public void clearSubjective(){
-		agents = new Dimension[4];
-		goldbars.clear();
-		breezes.clear();
-		stenches.clear();
-		wumpus.clear();
-		chests.clear();
-		filled_chests.clear();
-		pits.clear();
-		unknown.clear();
-		safe.clear();
-		has_gold = new boolean[]{false,false,false,false};
-		delivered_gold = new boolean[]{false,false,false,false}; 
+
+	/** Set where an agent should be. The animation walks it there after its earlier positions. */
+	public void setAgent(int agent, int x, int y){
+		Snapshot s;
+		int[] agents;
+		do{
+			s = snapshot.get();
+			if(s.agents[agent*2] == getPixelX(x) && s.agents[agent*2+1] == getPixelY(y)) return;
+			agents = s.agents.clone();
+			agents[agent*2] = getPixelX(x);
+			agents[agent*2+1] = getPixelY(y);
+		} while(!snapshot.compareAndSet(s, new Snapshot(s.cells, agents, s.moods, s.topics, s.notices)));
+		moves.add(new int[]{agent, agents[agent*2], agents[agent*2+1]});
 	}
-	
+
 	/**
-	 * Add an object to this world. Will remove the unknown symbol if one is present at the objects location.
-	 * @param x x position of the object.
-	 * @param y y position of the object.
-	 * @param obj The object to be added.
+	 * Set the objects of a cell.
+	 * @param x x position of the cell.
+	 * @param y y position of the cell.
+	 * @param objects The objects, as a combination of constants from the Wumpus class, such as Wumpus.GOLD|Wumpus.BREEZE.
 	 */
-	public void add(int x, int y, int obj){
-		Dimension d = new Dimension(x,y); 
-		searchAndTransfer(d, unknown, null); 			// Remove the unknown symbol
-		if(obj==Wumpus.PIT) pits.add(d);				// Add object to the appropriate array
-		else if(obj==Wumpus.BREEZE) breezes.add(d);
-		else if(obj==Wumpus.STENCH) stenches.add(d);
-		else if(obj==Wumpus.WUMPUS) wumpus.add(d);
-		else if(obj==Wumpus.CHEST) chests.add(d);
-		else if(obj==Wumpus.AGENT0) agents[0] = d;
-		else if(obj==Wumpus.AGENT1) agents[1] = d;
-		else if(obj==Wumpus.AGENT2) agents[2] = d;
-		else if(obj==Wumpus.AGENT3) agents[3] = d;
-		else if(obj==Wumpus.SAFE) safe.add(d);
-		else if(obj==Wumpus.CHEST){ 					// When a chest and goldbar are on the same spot, show a filled chest
-			if(goldbars.contains(d)) searchAndTransfer(d, goldbars, filled_chests); // Check for open chest
-			else chests.add(d);
-		} else if(obj==Wumpus.GOLD){
-			if(chests.contains(d)) searchAndTransfer(d, chests, filled_chests);     // Check for open chest
-			else goldbars.add(d);
-		}
-		
+	public void setCell(int x, int y, int objects){ setCells(new int[]{x*height+y}, new int[]{objects}, 1, false); }
+
+	/**
+	 * Set the objects of several cells at once. Only the columns of the cells are copied, the others are shared with the
+	 * current snapshot.
+	 * @param cells The cells as x*height+y.
+	 * @param objects Per cell the objects.
+	 * @param amount Number of cells.
+	 * @param clear Whether the other cells become empty.
+	 */
+	public void setCells(int[] cells, int[] objects, int amount, boolean clear){
+		Snapshot s;
+		int[][] c;
+		do{
+			s = snapshot.get();
+			c = clear ? columns(empty) : s.cells.clone();
+			for(int i = 0; i < amount; i++){
+				int x = cells[i]/height;
+				if(c[x] == s.cells[x] || c[x] == empty) c[x] = clear ? new int[height] : c[x].clone(); // Copy a column once, before its first change
+				c[x][cells[i]%height] = objects[i];
+			}
+		} while(!snapshot.compareAndSet(s, new Snapshot(c, s.agents, s.moods, s.topics, s.notices)));
 	}
-	
+
 	/**
-	 * Search for an instance of Dimension in one array, and if it exists remove it and put it in another.
-	 * @param d Dimension to searched and transferred.
-	 * @param ar1 Array from which to remove.
-	 * @param ar2 Array in which to add.
+	 * Set the mood of an agent.
+	 * @param agent The agent.
+	 * @param mood Use 0 for angry, 1 for content, 2 for happy.
 	 */
-	private void searchAndTransfer(Dimension d, List<Dimension> ar1, List<Dimension> ar2){
-		for(int i = 0; i < ar1.size(); i++)
-			if(ar1.get(i).equals(d)){
-				ar1.remove(i);
-				if(ar2!=null) ar2.add(d);
-				break;
-			} 
+	public void setMood(int agent, int mood){
+		Snapshot s;
+		int[] moods;
+		do{
+			s = snapshot.get();
+			moods = s.moods.clone();
+			moods[agent] = mood;
+		} while(!snapshot.compareAndSet(s, new Snapshot(s.cells, s.agents, moods, s.topics, s.notices)));
+	}
+
+	/**
+	 * Add a note. Notes with the same topic replace each other.
+	 * @return False if the note has a new topic and there is no room for it.
+	 */
+	public boolean addNote(String topic, String msg){
+		Snapshot s;
+		String[] topics, notices;
+		do{
+			s = snapshot.get();
+			int i = Arrays.asList(s.topics).indexOf(topic);
+			if(i < 0){														// First message on the topic
+				if(s.topics.length == MAX_NOTICES) return false;
+				i = s.topics.length;
+				topics = Arrays.copyOf(s.topics, i+1);
+				topics[i] = topic;
+				notices = Arrays.copyOf(s.notices, i+1);
+			} else {
+				topics = s.topics;
+				notices = s.notices.clone();
+			}
+			notices[i] = msg;
+		} while(!snapshot.compareAndSet(s, new Snapshot(s.cells, s.agents, s.moods, topics, notices)));
+		return true;
+	}
+
+	/** The current data, which does not change anymore. */
+	public Snapshot getSnapshot(){ return snapshot.get(); }
+	/** Pixel positions (x,y) of where the agents are shown. The array is not changed afterwards. */
+	public int[] getShownAgents(){ return shown; }
+
+	/** Pixel x of the left side of a column. */
+	public int getPixelX(int x){ return startX+x*cell_size; }
+	/** Pixel y of the top side of a row, the rows are drawn with y = 0 at the bottom. */
+	public int getPixelY(int y){ return startY+(height-y-1)*cell_size; }
+	public int getWidth(){ return width; }
+	public int getHeight(){ return height; }
+	public int getAgentnr(){ return agentnr; }
+	public void setAgentnr(int agentnr){ this.agentnr = agentnr; }
+
+	/** The cells, agents, moods and notices of a world at one moment. */
+	public class Snapshot {
+		private final int[][] cells;											// Objects per cell, per column
+		private final int[] agents;												// Pixel positions (x,y) where the agents should be, ABSENT if not in the world
+		private final int[] moods;												// Moods of the agents in this world
+		private final String[] topics, notices;									// Notices and their topics, in the order of their first posting
+
+		private Snapshot(int[][] cells, int[] agents, int[] moods, String[] topics, String[] notices){
+			this.cells = cells;
+			this.agents = agents;
+			this.moods = moods;
+			this.topics = topics;
+			this.notices = notices;
+		}
+
+		public int getCell(int x, int y){ return cells[x][y]; }
+		public int getAgentAmount(){ return moods.length; }
+		public boolean hasAgent(int agent){ return agents[agent*2] != ABSENT; }
+		/** Pixel x of where an agent should be. */
+		public int getAgentX(int agent){ return agents[agent*2]; }
+		/** Pixel y of where an agent should be. */
+		public int getAgentY(int agent){ return agents[agent*2+1]; }
+		public int getMood(int agent){ return moods[agent]; }
+		public int getNoticeAmount(){ return notices.length; }
+		public String getNotice(int i){ return notices[i]; }
 	}
 }
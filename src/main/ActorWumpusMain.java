@@ -16,6 +16,7 @@ import agentplatform.PlatformNode;
 import environment.AgentInterface;
 import environment.Wumpus;
 import environment.WumpusGUI;
+import tracing.TraceWriter;
 
 public class ActorWumpusMain {
 	// Wumpus world attributes
@@ -25,19 +26,35 @@ public class ActorWumpusMain {
 	private JFrame w_frame;
 	private PlatformNode platform;
 	private Messenger messenger;
+	private TraceWriter traceWriter;
 	
+	/**
+	 * Start the system. Run with the argument "headless" to start without a GUI and without animation delays, with "fast"
+	 * to show agents that run at full speed, or with a number to let each agent wait that many milliseconds after each of
+	 * its moves. Other arguments print the usage.
+	 */
 	public static void main(String[] arg){
 		ActorWumpusMain m = new ActorWumpusMain();
-		m.startWumpusWorld();
+		if(arg.length > 1 || (arg.length == 1 && !arg[0].equals("headless") && !arg[0].equals("fast") && !arg[0].matches("\\d{1,9}"))){
+			System.out.println("Usage: java main.ActorWumpusMain [headless | fast | milliseconds per move]");
+			return;
+		}
+		if(arg.length > 0 && arg[0].equals("headless")) m.startHeadlessWumpusWorld();
+		else if(arg.length > 0 && arg[0].equals("fast")) m.startWumpusWorld(0);
+		else if(arg.length > 0) m.startWumpusWorld(Integer.parseInt(arg[0]));
+		else m.startWumpusWorld(400);
 		m.createAgentPlatform();
 		m.createAgents();
 	}
 	
-	public void startWumpusWorld(){
-		w_env = new Wumpus();
-		w_env.loadFromFile("./resources/standard_wumpus.txt", false); // Change this to load other worlds
-		//w_env.loadFromFile("./resources/bigwumpus2.txt", false);
+	/**
+	 * Start the world with a GUI.
+	 * @param move_duration Milliseconds that agents wait after each move, 0 for full speed.
+	 */
+	public void startWumpusWorld(int move_duration){
+		loadWorld();
 		w_gui = new WumpusGUI(w_env, 30);
+		w_gui.setMoveDuration(move_duration);
 		w_gui.addMouseListener(w_gui);
 		w_frame = new JFrame();
 		w_frame.add(w_gui);
@@ -47,17 +64,53 @@ public class ActorWumpusMain {
 		agentInterface = new AgentInterface(w_env, w_gui);  
 	}
 	
+	/** Start the world without a GUI. Agents then act as fast as they can deliberate. */
+	public void startHeadlessWumpusWorld(){
+		loadWorld();
+		agentInterface = new AgentInterface(w_env);
+	}
+	
+	private void loadWorld(){
+		w_env = new Wumpus();
+		w_env.loadFromFile("./resources/standard_wumpus.txt", false); // Change this to load other worlds
+		//w_env.loadFromFile("./resources/bigwumpus2.txt", false);
+	}
+	
 	public void createAgentPlatform(){
-		platform = new PlatformNode();
+		messenger = new LocalMessenger();
+		platform = createPlatform(messenger, true, 5);
+		traceWriter = createTraceWriter();
+	}
+	
+	/** Create a writer for the binary traces of agents in ./output/, which writes what is left when the program exits. */
+	public static TraceWriter createTraceWriter(){
+		final TraceWriter trace = new TraceWriter("./output/", 4096, 64<<20, 4);
+		trace.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(){
+			public void run(){ trace.close(); }
+		});
+		return trace;
+	}
+	
+	/**
+	 * Create a platform with one actor of each type.
+	 * @param messenger The messenger that agents on the platform use.
+	 * @param debug Whether agents write their states to the ./output/ folder. Note that this clears the folder. The states
+	 * are written as JSON, unless the agent class has a trace writer.
+	 * @param queueSize Maximum number of agents that wait for an actor.
+	 * @return The new platform.
+	 */
+	public static PlatformNode createPlatform(Messenger messenger, boolean debug, int queueSize){
+		PlatformNode platform = new PlatformNode();
 		platform.reset();
-		platform.setDebugMode(true);
+		if(debug) platform.setDebugMode(true);
 		
 		// Generate execution actors, add them to the repository and instantiate one of each.
-		GoalAchiever goalActor = new GoalAchiever(5,platform);
-		ExternalEventHandler eventActor = new ExternalEventHandler(5,platform);
-		MessageHandler messageActor = new MessageHandler(5,platform);
-		PlanExecutor executorActor = new PlanExecutor(5,platform);
-		Repairer repairActor = new Repairer(5,platform);
+		GoalAchiever goalActor = new GoalAchiever(queueSize,platform);
+		ExternalEventHandler eventActor = new ExternalEventHandler(queueSize,platform);
+		MessageHandler messageActor = new MessageHandler(queueSize,platform);
+		PlanExecutor executorActor = new PlanExecutor(queueSize,platform);
+		Repairer repairActor = new Repairer(queueSize,platform);
 		
 		platform.addActorToRepository(PlatformNode.GOAL_ACHIEVER, goalActor);
 		platform.addActorToRepository(PlatformNode.EXTERNAL_EVENT_HANDLER, eventActor);
@@ -71,19 +124,22 @@ public class ActorWumpusMain {
 		platform.instantiateActor(PlatformNode.PLAN_EXECUTOR);
 		platform.instantiateActor(PlatformNode.REPAIRER);
 		
-		messenger = new LocalMessenger();
 		platform.addMessenger(0, messenger);
+		return platform;
 	}
 	
 	public void createAgents(){
 		// Create the agent class and an instantiation. (first we do single agent system)
 		WumpusAgent agent = new WumpusAgent(agentInterface);
+		agent.setTraceWriter(traceWriter);
 		Object[] args = new Object[]{messenger};
 		platform.addAgentToRepository(WumpusConstants.VERSION1, agent); 
-		// Copy/remove to add more agents
-		platform.instantiateAgent(WumpusConstants.VERSION1, args); 
-		platform.instantiateAgent(WumpusConstants.VERSION1, args);
-		platform.instantiateAgent(WumpusConstants.VERSION1, args);
-		//platform.instantiateAgent(WumpusConstants.VERSION1, args);
+		synchronized(agentInterface){ // Agents announce themselves after all agents are registered
+			// Copy/remove to add more agents
+			platform.instantiateAgent(WumpusConstants.VERSION1, args); 
+			platform.instantiateAgent(WumpusConstants.VERSION1, args);
+			platform.instantiateAgent(WumpusConstants.VERSION1, args);
+			//platform.instantiateAgent(WumpusConstants.VERSION1, args);
+		}
 	}
 }
@@ -0,0 +1,139 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import environment.WumpusGenerator;
+
+/**
+ * Runs many headless episodes in parallel and writes their results as CSV. Usage:
+ *
+ * java main.BatchRunner [-threads n] [-agents n] [-repeat n] [-maxsteps n] [-timeout ms] [-out file]
+ *                        [-size WxH] [-pits d] [-gold d] [-chests d] [-risk p] [-save dir] world1 world2 ...
+ *
+ * A world is either a world file, a generator seed <code>seed:n</code>, a range of seeds <code>seeds:from-to</code>
+ * (inclusive) or a checkpoint <code>checkpoint:file</code> to continue from. Generated worlds use the size and densities given by the options. Every world is played <code>repeat</code>
+ * times. By default as many episodes run at the same time as there are cores, the number of agents is taken from the
+ * world file (4 for generated worlds) and the results are written to ./output/batch_results.csv. With <code>-risk</code>
+ * agents that have no safe spot left enter unsafe spots whose chance of death is at most p (by default they stop). On
+ * generated worlds agents estimate that chance with the pit density of the generator, on world files with 0.2. With
+ * <code>-save</code> the end state of episode n is saved to dir/n.ckpt, which can be continued from with a longer step
+ * or time limit.
+ *
+ * @author Bas Testerink
+ */
+public class BatchRunner {
+	private int threads = Runtime.getRuntime().availableProcessors();	// Number of episodes that run at the same time
+	private int agents = -1, repeat = 1, maxSteps = 100000;				// Agents per episode, runs per world, step limit per episode
+	private long timeout = 60000;										// Time limit per episode in milliseconds
+	private String out = "./output/batch_results.csv";					// Result file
+	private int width = 32, height = 32;								// Size of generated worlds
+	private double pits = 0.1, gold = 0.02, chests = 0.005;				// Densities of generated worlds
+	private double risk = 0;											// Risk threshold of the agents
+	private String save = null;											// Directory for the checkpoints of the episodes, if set
+	private List<Episode> episodes = new ArrayList<Episode>();			// The episodes to run
+
+	public static void main(String[] args) throws Exception {
+		BatchRunner runner = new BatchRunner();
+		List<String> worlds = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-threads")) runner.threads = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-agents")) runner.agents = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-repeat")) runner.repeat = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-maxsteps")) runner.maxSteps = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-timeout")) runner.timeout = Long.parseLong(args[++i]);
+			else if(args[i].equals("-out")) runner.out = args[++i];
+			else if(args[i].equals("-size")){
+				String[] size = args[++i].split("x");
+				runner.width = Integer.parseInt(size[0]);
+				runner.height = Integer.parseInt(size[1]);
+			}
+			else if(args[i].equals("-pits")) runner.pits = Double.parseDouble(args[++i]);
+			else if(args[i].equals("-gold")) runner.gold = Double.parseDouble(args[++i]);
+			else if(args[i].equals("-chests")) runner.chests = Double.parseDouble(args[++i]);
+			else if(args[i].equals("-risk")) runner.risk = Double.parseDouble(args[++i]);
+			else if(args[i].equals("-save")) runner.save = args[++i];
+			else worlds.add(args[i]);
+		}
+		if(worlds.isEmpty()) worlds.add("./resources/standard_wumpus.txt");
+		if(runner.save != null) new File(runner.save).mkdirs();
+		for(String world : worlds){
+			if(world.startsWith("seed:")) runner.addGenerated(Long.parseLong(world.substring(5)));
+			else if(world.startsWith("seeds:")){
+				String[] range = world.substring(6).split("-");
+				for(long seed = Long.parseLong(range[0]); seed <= Long.parseLong(range[1]); seed++)
+					runner.addGenerated(seed);
+			} else if(world.startsWith("checkpoint:")){
+				for(int r = 0; r < runner.repeat; r++)
+					runner.addEpisode(new CheckpointEpisode(world.substring(11), runner.maxSteps, runner.timeout));
+			} else for(int r = 0; r < runner.repeat; r++)
+				runner.addEpisode(new Episode(world, runner.agents, runner.maxSteps, runner.timeout));
+		}
+		runner.run();
+	}
+	
+	/** Add the episodes for a generated world. */
+	private void addGenerated(long seed){
+		for(int r = 0; r < repeat; r++){
+			WumpusGenerator generator = new WumpusGenerator(seed, width, height);
+			generator.setPitDensity(pits);
+			generator.setGoldDensity(gold);
+			generator.setChestDensity(chests);
+			if(agents >= 0) generator.setAgents(agents);
+			addEpisode(new GeneratedEpisode(generator, maxSteps, timeout));
+		}
+	}
+
+	public void addEpisode(Episode e){ 
+		e.setRiskThreshold(risk);
+		if(save != null) e.setCheckpointFile(new File(save, episodes.size()+".ckpt").getPath());
+		episodes.add(e); 
+	}
+
+	/** Run all episodes, write the results and print a summary. */
+	public List<EpisodeResult> run() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<EpisodeResult>> futures = new ArrayList<Future<EpisodeResult>>();
+		long start = System.nanoTime();
+		for(Episode e : episodes) futures.add(pool.submit(e));
+		List<EpisodeResult> results = new ArrayList<EpisodeResult>();
+		BufferedWriter writer = new BufferedWriter(new FileWriter(out));
+		writer.write(EpisodeResult.csvHeader());
+		writer.newLine();
+		for(Future<EpisodeResult> f : futures){								// Collect in submission order
+			EpisodeResult r = f.get();
+			results.add(r);
+			writer.write(r.toCSV());
+			writer.newLine();
+		}
+		writer.close();
+		pool.shutdown();
+		printSummary(results, System.nanoTime()-start);
+		return results;
+	}
+
+	/** Print aggregate results to the standard output. */
+	private void printSummary(List<EpisodeResult> results, long wallTime){
+		int cleared = 0, timedOut = 0;
+		long steps = 0, deaths = 0, messages = 0, episodeTime = 0;
+		for(EpisodeResult r : results){
+			if(r.isCleared()) cleared++;
+			if(r.isTimedOut()) timedOut++;
+			steps += r.getSteps();
+			deaths += r.getDeaths();
+			messages += r.getMessages();
+			episodeTime += r.getWallTime();
+		}
+		int n = Math.max(results.size(), 1);
+		System.out.println("Episodes: "+results.size()+", cleared: "+cleared+", timed out: "+timedOut);
+		System.out.println("Mean steps: "+(steps/(double)n)+", deaths: "+deaths+", mean messages: "+(messages/(double)n));
+		System.out.println("Mean episode time: "+(episodeTime/1000000.0/n)+" ms, total time: "+(wallTime/1000000.0)+" ms");
+		System.out.println("Results written to "+out);
+	}
+}
@@ -0,0 +1,45 @@
+package main;
+
+import java.io.IOException;
+
+import agentcore.Checkpoint;
+import agentcore.WumpusAgent;
+import environment.AgentInterface;
+import environment.Wumpus;
+/**
+ * An episode that continues from a checkpoint instead of starting a new world. The agents of the checkpoint get their
+ * saved beliefs, and the moves that were made before the checkpoint count towards the step limit.
+ * 
+ * @author Bas Testerink
+ */
+public class CheckpointEpisode extends Episode {
+	private String file;					// The checkpoint file
+	private Checkpoint checkpoint;			// The checkpoint, read when the episode starts
+	
+	/**
+	 * Create an episode that continues from a checkpoint.
+	 * @param file The checkpoint file, it also determines the number of agents.
+	 * @param maxSteps Maximum number of moves of all agents together, including those before the checkpoint.
+	 * @param timeout Maximum wall clock time in milliseconds.
+	 */
+	public CheckpointEpisode(String file, int maxSteps, long timeout){
+		super(null, -1, maxSteps, timeout);
+		this.file = file;
+	}
+	
+	protected Wumpus createWorld(){
+		Wumpus env = new Wumpus();
+		try{
+			checkpoint = Checkpoint.read(file);
+			checkpoint.restoreWorld(env);
+		} catch(IOException e){ throw new IllegalArgumentException("Cannot read checkpoint "+file, e); }
+		return env;
+	}
+	
+	protected void prepare(WumpusAgent agentClass, AgentInterface agentInterface){
+		agentClass.setCheckpoint(checkpoint);
+		agentInterface.setMoves(checkpoint.getMoves());
+	}
+	
+	protected String getWorldName(){ return "checkpoint:"+file; }
+}
@@ -0,0 +1,32 @@
+package main;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import messaging.Messenger;
+import agentcore.Trigger;
+/**
+ * Messenger that forwards everything to another messenger and counts the messages that are sent. 
+ * Used by the batch runner to report the communication cost of an episode.
+ * 
+ * @author Bas Testerink
+ */
+public class CountingMessenger implements Messenger {
+	private Messenger messenger;						// The messenger that actually delivers messages
+	private AtomicInteger sent = new AtomicInteger();	// Number of sent messages
+	
+	public CountingMessenger(Messenger messenger){
+		this.messenger = messenger;
+	}
+
+	public void getMessages(int receiver, List<Trigger> messages, boolean remove){
+		messenger.getMessages(receiver, messages, remove);
+	}
+
+	public void sendMessage(int sender, int receiver, Object content){
+		sent.incrementAndGet();
+		messenger.sendMessage(sender, receiver, content);
+	}
+	
+	public int getSentMessages(){ return sent.get(); }
+}
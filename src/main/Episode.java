@@ -0,0 +1,150 @@
+package main;
+
+import java.util.concurrent.Callable;
+
+import messaging.LocalMessenger;
+import actors.Actor;
+import agentcore.AgentHaltedException;
+import agentcore.Checkpoint;
+import agentcore.WumpusAgent;
+import agentcore.WumpusAgentInstantiation;
+import agentcore.WumpusConstants;
+import agentcore.WumpusContext;
+import agentplatform.PlatformNode;
+import environment.AgentInterface;
+import environment.Wumpus;
+/**
+ * One isolated run of the Wumpus world. An episode has its own world, agent interface, messenger, platform and agents,
+ * so many episodes can run side by side. The actor threads of the platform are started inside a thread group of the
+ * episode, which allows the episode to take them down when it has finished.
+ *
+ * An episode is finished when all gold is delivered, when all agents are dead, when all living agents consider the
+ * world explored and nothing happened for a while, or when it hits its step or time limit. The agents are then halted,
+ * after which the state of the episode can be saved as a checkpoint to continue from later (see CheckpointEpisode).
+ *
+ * @author Bas Testerink
+ */
+public class Episode implements Callable<EpisodeResult> {
+	private static final int POLL_INTERVAL = 2, QUIET_POLLS = 25;	// Milliseconds between checks, checks without activity before an explored world counts as done
+	private String file;											// World file to play
+	private int agentAmount, maxSteps;								// Number of agents (-1 means the number of agents in the file), step limit
+	private long timeout;											// Wall clock limit in milliseconds
+	private double riskThreshold = 0;								// Highest chance of death that agents accept when no safe spot is left
+	private String checkpointFile = null;							// File to save the end state to, if set
+
+	/**
+	 * Create an episode.
+	 * @param file The world file to load.
+	 * @param agentAmount Number of agents, use -1 to take the number of agents that the world file places.
+	 * @param maxSteps Maximum number of moves of all agents together.
+	 * @param timeout Maximum wall clock time in milliseconds.
+	 */
+	public Episode(String file, int agentAmount, int maxSteps, long timeout){
+		this.file = file;
+		this.agentAmount = agentAmount;
+		this.maxSteps = maxSteps;
+		this.timeout = timeout;
+	}
+
+	public void setRiskThreshold(double riskThreshold){ this.riskThreshold = riskThreshold; }
+	/** Save the world and the beliefs of the agents to a checkpoint file when the episode has finished. */
+	public void setCheckpointFile(String file){ checkpointFile = file; }
+
+	/** Create the world of this episode. */
+	protected Wumpus createWorld(){
+		Wumpus env = new Wumpus();
+		env.loadFromFile(file, false);
+		return env;
+	}
+
+	/** Description of the world for the results. */
+	protected String getWorldName(){ return file; }
+
+	/** Prepare the agent class and the interface before the agents are instantiated. */
+	protected void prepare(WumpusAgent agentClass, AgentInterface agentInterface){ }
+
+	/** Run the episode until it is finished. */
+	public EpisodeResult call() throws Exception {
+		final Wumpus env = createWorld();
+		final AgentInterface agentInterface = new AgentInterface(env);
+		final CountingMessenger messenger = new CountingMessenger(new LocalMessenger());
+		final WumpusAgent agentClass = new WumpusAgent(agentInterface, riskThreshold);
+		if(env.getGenerator() != null) agentClass.setPitPrior(env.getGenerator().getPitDensity()); // Agents know the density of generated worlds
+		final int agents = agentAmount < 0 ? env.getAgentAmount() : Math.min(agentAmount, env.getAgentAmount());
+		prepare(agentClass, agentInterface);
+		EpisodeThreadGroup group = new EpisodeThreadGroup(getWorldName());
+		long start = System.nanoTime();
+
+		// Start the platform from a thread of the episode group, the actor threads inherit the group and daemon status
+		Thread starter = new Thread(group, new Runnable(){
+			public void run(){
+				PlatformNode platform = ActorWumpusMain.createPlatform(messenger, false, agents+1); // Room for all agents and a halted one
+				platform.addAgentToRepository(WumpusConstants.VERSION1, agentClass);
+				Object[] args = new Object[]{messenger};
+				synchronized(agentInterface){							// Agents announce themselves after all agents are registered
+					for(int i = 0; i < agents; i++)
+						platform.instantiateAgent(WumpusConstants.VERSION1, args);
+				}
+			}
+		});
+		starter.setDaemon(true);
+		starter.start();
+		starter.join();
+
+		// Wait for the end of the episode
+		boolean timedOut = false, hasGold = !agentInterface.isCleared();	// Worlds without gold are played until they are explored
+		int quiet = 0, lastMoves = -1, lastMessages = -1;
+		while(true){
+			Thread.sleep(POLL_INTERVAL);
+			int moves = agentInterface.getMoves();
+			int sent = messenger.getSentMessages();
+			if((hasGold && agentInterface.isCleared()) || agentInterface.getDeaths(agents) == agents) break; // Read through the writer, which changes them
+			if(moves >= maxSteps || System.nanoTime()-start >= timeout*1000000L){
+				timedOut = true;
+				break;
+			}
+			if(moves == lastMoves && sent == lastMessages && allExplored(agentClass)) quiet++;
+			else quiet = 0;
+			if(quiet >= QUIET_POLLS) break;
+			lastMoves = moves;
+			lastMessages = sent;
+		}
+		long wallTime = System.nanoTime()-start;
+		halt(agentClass, group);
+		if(checkpointFile != null) Checkpoint.write(checkpointFile, env, agentInterface.getMoves(), agentClass.getInstantiations());
+		return new EpisodeResult(getWorldName(), agents, agentInterface.isCleared(), timedOut, agentInterface.getMoves(),
+				agentInterface.getDeaths(agents), messenger.getSentMessages(), wallTime);
+	}
+
+	/** Check whether all agents have no safe spot left to explore. */
+	private boolean allExplored(WumpusAgent agentClass){
+		for(WumpusAgentInstantiation a : agentClass.getInstantiations())
+			if(!((WumpusContext)a.getContext()).isExplored()) return false;
+		return true;
+	}
+
+	/**
+	 * Halt the agents and end the actor threads. Busy actors end when their agent asks for the next actor. Idle actors
+	 * are waiting for an agent, so they receive an empty halted agent that ends them in the same way.
+	 */
+	private void halt(WumpusAgent agentClass, EpisodeThreadGroup group) throws InterruptedException {
+		agentClass.halt();
+		Thread[] threads = new Thread[group.activeCount()*2+1];
+		int n = group.enumerate(threads);
+		WumpusAgentInstantiation pill = new WumpusAgentInstantiation(agentClass, null, null);
+		pill.setID(-1);
+		for(int i = 0; i < n; i++)
+			if(threads[i] instanceof Actor && ((Actor)threads[i]).getQueueSize() == 0)
+				((Actor)threads[i]).addAgent(pill);
+		for(int i = 0; i < n; i++) threads[i].join(1000);
+	}
+
+	/** Thread group that silently accepts the ends of halted actor threads. */
+	private static class EpisodeThreadGroup extends ThreadGroup {
+		public EpisodeThreadGroup(String name){ super(name); }
+
+		public void uncaughtException(Thread t, Throwable e){
+			if(!(e instanceof AgentHaltedException)) super.uncaughtException(t, e);
+		}
+	}
+}
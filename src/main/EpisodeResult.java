@@ -0,0 +1,38 @@
+package main;
+/**
+ * Outcome of one episode of a batch run.
+ * 
+ * @author Bas Testerink
+ */
+public class EpisodeResult {
+	private String world;								// Description of the world that was played
+	private int agents, steps, deaths, messages;		// Number of agents, moves performed, agents that died, messages sent
+	private boolean cleared, timedOut;					// Whether all gold was delivered, whether the episode hit a limit
+	private long wallTime;								// Wall clock time of the episode in nanoseconds
+	
+	public EpisodeResult(String world, int agents, boolean cleared, boolean timedOut, int steps, int deaths, int messages, long wallTime){
+		this.world = world;
+		this.agents = agents;
+		this.cleared = cleared;
+		this.timedOut = timedOut;
+		this.steps = steps;
+		this.deaths = deaths;
+		this.messages = messages;
+		this.wallTime = wallTime;
+	}
+	
+	public String getWorld(){ return world; }
+	public int getAgents(){ return agents; }
+	public boolean isCleared(){ return cleared; }
+	public boolean isTimedOut(){ return timedOut; }
+	public int getSteps(){ return steps; }
+	public int getDeaths(){ return deaths; }
+	public int getMessages(){ return messages; }
+	public long getWallTime(){ return wallTime; }
+	
+	public static String csvHeader(){ return "world,agents,cleared,timed_out,steps,deaths,messages,wall_ms"; }
+	
+	public String toCSV(){
+		return world+","+agents+","+cleared+","+timedOut+","+steps+","+deaths+","+messages+","+(wallTime/1000000.0);
+	}
+}
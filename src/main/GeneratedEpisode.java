@@ -0,0 +1,31 @@
+package main;
+
+import environment.Wumpus;
+import environment.WumpusGenerator;
+/**
+ * An episode that is played on a generated world instead of a world file.
+ * 
+ * @author Bas Testerink
+ */
+public class GeneratedEpisode extends Episode {
+	private WumpusGenerator generator;		// Generator of the world
+	
+	/**
+	 * Create an episode on a generated world.
+	 * @param generator Generator of the world, it also determines the number of agents.
+	 * @param maxSteps Maximum number of moves of all agents together.
+	 * @param timeout Maximum wall clock time in milliseconds.
+	 */
+	public GeneratedEpisode(WumpusGenerator generator, int maxSteps, long timeout){
+		super(null, -1, maxSteps, timeout);
+		this.generator = generator;
+	}
+	
+	protected Wumpus createWorld(){
+		Wumpus env = new Wumpus();
+		generator.generate(env);
+		return env;
+	}
+	
+	protected String getWorldName(){ return generator.toString(); }
+}
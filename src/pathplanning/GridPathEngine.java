@@ -0,0 +1,119 @@
+package pathplanning;
+
+import java.util.Arrays;
+/**
+ * Shortest paths on a grid of cells. Cells are numbered x*height+y. Which cells can be traversed is stored in a bitset,
+ * and two traversable cells that are next to each other are connected. As every step has the same length, a breadth
+ * first search gives the shortest distances. All arrays are made once, so a search allocates nothing.
+ *
+ * A search stamps the cells that it reaches. Cells with an older stamp count as unreachable, which saves resetting the
+ * distances of the whole grid for every search.
+ *
+ * Searches run on demand. Setting the source or the traversable cells only marks the last search as stale, and the
+ * next request for a distance or a previous cell searches again. A cell that becomes traversable away from the reached
+ * cells, or untraversable where no cell was reached, does not change the distances and leaves the search as it is.
+ *
+ * @author Bas Testerink
+ */
+public class GridPathEngine {
+	private int width, height, size;			// Dimensions of the grid and number of cells
+	private long[] traversable;					// Bitset of the traversable cells
+	private int[] distance, previous;			// Per cell the distance to the source and the previous cell on the way to the source
+	private int[] stamp;						// Per cell the search that reached it last
+	private int[] queue;						// Breadth first queue, every cell enters it at most once per search
+	private int search = 0;						// Number of the current search
+	private int source = -1;					// Source of the current search
+	private boolean stale = false;				// Whether the source or the reached cells changed since the last search
+
+	public GridPathEngine(int width, int height){
+		this.width = width;
+		this.height = height;
+		size = width*height;
+		traversable = new long[(size+63)>>>6];
+		distance = new int[size];
+		previous = new int[size];
+		stamp = new int[size];
+		queue = new int[size];
+	}
+
+	public int cell(int x, int y){ return x*height+y; }
+	public int getX(int cell){ return cell/height; }
+	public int getY(int cell){ return cell%height; }
+
+	public boolean isTraversable(int cell){ return (traversable[cell>>>6] & (1L<<cell)) != 0; }
+	public void setTraversable(int cell, boolean b){
+		if(b == isTraversable(cell)) return;
+		if(b) traversable[cell>>>6] |= 1L<<cell;
+		else traversable[cell>>>6] &= ~(1L<<cell);
+		if(!stale) stale = b ? nextToReached(cell) : stamp[cell] == search;
+	}
+
+	/** Whether a neighbor of a cell was reached by the last search. */
+	private boolean nextToReached(int cell){
+		int y = cell%height;
+		return (cell >= height && stamp[cell-height] == search) || (cell < size-height && stamp[cell+height] == search) ||
+				(y > 0 && stamp[cell-1] == search) || (y < height-1 && stamp[cell+1] == search);
+	}
+
+	/** Set the cell to search from. The search runs when a distance or previous cell is requested. */
+	public void setSource(int source){
+		if(source == this.source) return;
+		this.source = source;
+		stale = true;
+	}
+
+	/**
+	 * Compute the distances from a source to all cells that can be reached through traversable cells. The source itself
+	 * is always reached, also when it is not traversable.
+	 * @param source The cell to start from.
+	 */
+	public void search(int source){
+		stale = false;
+		if(++search == 0){ 							// Stamps wrapped around, forget all old searches
+			Arrays.fill(stamp, 0);
+			search = 1;
+		}
+		this.source = source;
+		stamp[source] = search;
+		distance[source] = 0;
+		previous[source] = -1;
+		if(!isTraversable(source)) return;
+		int head = 0, tail = 0;
+		queue[tail++] = source;
+		while(head < tail){
+			int c = queue[head++];
+			int y = c%height;
+			if(c >= height) tail = visit(c, c-height, tail);		// Left
+			if(c < size-height) tail = visit(c, c+height, tail);	// Right
+			if(y > 0) tail = visit(c, c-1, tail);					// Down
+			if(y < height-1) tail = visit(c, c+1, tail);			// Up
+		}
+	}
+
+	/** Reach a neighbor of a cell in the current search. Returns the new end of the queue. */
+	private int visit(int from, int to, int tail){
+		if(stamp[to] == search || !isTraversable(to)) return tail;
+		stamp[to] = search;
+		distance[to] = distance[from]+1;
+		previous[to] = from;
+		queue[tail] = to;
+		return tail+1;
+	}
+
+	/** Distance from the source of the last search, or <code>Integer.MAX_VALUE</code> if the cell was not reached. */
+	public int getDistance(int cell){
+		if(stale && source >= 0) search(source);
+		return stamp[cell] == search ? distance[cell] : Integer.MAX_VALUE;
+	}
+
+	/** Next cell on the way back to the source of the last search, or -1 for the source and cells that were not reached. */
+	public int getPrevious(int cell){
+		if(stale && source >= 0) search(source);
+		return stamp[cell] == search ? previous[cell] : -1;
+	}
+
+	/** Source of the distances, -1 if there was none. */
+	public int getSource(){ return source; }
+	public int getWidth(){ return width; }
+	public int getHeight(){ return height; }
+}
@@ -0,0 +1,66 @@
+package pathplanning;
+
+import java.util.Arrays;
+import java.util.BitSet;
+/**
+ * A planned route over the cells of a GridPathEngine, kept so that it can be followed over multiple steps. The cells
+ * that still have to be visited are also kept in a bitset, such that the route can quickly be checked against cells
+ * whose beliefs changed.
+ *
+ * @author Bas Testerink
+ */
+public class GridRoute {
+	private int[] cells = new int[16];			// Cells of the route, from the start to the target
+	private int length, step;					// Number of cells of the route, index of the cell where the agent is
+	private BitSet remaining = new BitSet();	// Cells of the route from the current step onwards
+
+	/**
+	 * Plan a route from the source of the last search to a target.
+	 * @param paths The path engine, which has searched from the agent's position.
+	 * @param target The cell to go to.
+	 * @return Whether a route with at least one step was found.
+	 */
+	public boolean plan(GridPathEngine paths, int target){
+		clear();
+		int distance = paths.getDistance(target);
+		if(distance == 0 || distance == Integer.MAX_VALUE) return false;
+		if(distance >= cells.length) cells = Arrays.copyOf(cells, Math.max(distance+1, cells.length*2));
+		length = distance+1;
+		for(int cell = target, i = distance; cell != -1; cell = paths.getPrevious(cell), i--){ // Walk back from the target
+			cells[i] = cell;
+			remaining.set(cell);
+		}
+		return true;
+	}
+
+	/** Whether the route continues from a position towards a target. */
+	public boolean leadsTo(int position, int target){
+		return step < length-1 && cells[step] == position && cells[length-1] == target;
+	}
+
+	/** The cell to move to from the current step. */
+	public int getNext(){ return cells[step+1]; }
+
+	/** The cell that is a number of steps further than the next cell, which must be within the remaining steps. */
+	public int getNext(int further){ return cells[step+1+further]; }
+
+	/** Register that the next cell has been reached. */
+	public void advance(){
+		remaining.clear(cells[step]);
+		step++;
+	}
+
+	/** Whether a cell is part of the route that still has to be followed. */
+	public boolean isOnRoute(int cell){ return remaining.get(cell); }
+
+	/** Forget the route. */
+	public void clear(){
+		for(int i = step; i < length; i++) remaining.clear(cells[i]);
+		length = step = 0;
+	}
+
+	public int getRemainingSteps(){ return Math.max(length-1-step, 0); }
+
+	/** The last cell of the route, -1 if there are no steps left. */
+	public int getTarget(){ return step < length-1 ? cells[length-1] : -1; }
+}
@@ -3,6 +3,8 @@ package strategies;
 import java.util.ArrayList;
 import java.util.List;
 
+import pathplanning.GridPathEngine;
+import pathplanning.GridRoute;
 import triggers.KnowledgeMessage;
 import triggers.TraverseGoal;
 
@@ -16,9 +18,10 @@ import agentcore.Trigger;
 import agentcore.WumpusAgentInstantiation;
 import agentcore.WumpusConstants;
 import agentcore.WumpusContext;
-import agentcore.WumpusPathPlanner;
 /**
- * The traverse strategy looks at the quickest path to the goal location and then executes the first move.
+ * The traverse strategy looks at the quickest path to the goal location and then follows it as one batch of moves, up 
+ * to the first cell that the agent did not visit yet. The path is kept in the context of the agent and followed in the
+ * next cycles, until a cell on the rest of the path changes.
  * 
  * @author Bas Testerink
  */
@@ -32,11 +35,12 @@ public class TraverseStrategy extends Strategy {
 		WumpusContext context = ((WumpusContext)c);
 		TraverseGoal g = (TraverseGoal) t;
 		GridCell targetCell = context.getCell(g.getX(), g.getY()); 
-		if(targetCell.getDistance()==Integer.MAX_VALUE) return false;
+		if(context.getDistance(targetCell)==Integer.MAX_VALUE) return false;
 		switch(g.getAtTarget()){										// Check if the target spot fits the goal
 		case WumpusConstants.SAFE: return targetCell.isSafe();
 		case WumpusConstants.CHEST: return targetCell.hasChest();
 		case WumpusConstants.GOLD: return targetCell.hasGold();
+		case WumpusConstants.RISKY: return true;						// The explore strategy made the target reachable
 		}
 		return false; 
 	}
@@ -59,8 +63,11 @@ public class TraverseStrategy extends Strategy {
 		public boolean executeNextStep(AgentInstantiation agent){
 			setFinished(true);
 			WumpusContext context = (WumpusContext)((WumpusAgentInstantiation)agent).getContext();
-			List<Integer> plan = WumpusPathPlanner.planPath(context.getCell(goal.getX(), goal.getY())); 
-			if(plan.size()>0) context.move(agent, plan.get(plan.size()-1));
+			GridPathEngine paths = context.getPaths();
+			GridRoute route = context.getRoute();
+			int target = paths.cell(goal.getX(), goal.getY());
+			if(!route.leadsTo(paths.getSource(), target) && !route.plan(paths, target)) return true;
+			context.followRoute(agent);
 			return true;
 		}
 		
@@ -1,6 +1,5 @@
 package strategies; 
 
-import pathplanning.Vertex;
 import triggers.ClearWorldGoal;
 import triggers.KnowledgeMessage;
 import triggers.TraverseGoal;
@@ -18,11 +17,24 @@ import agentcore.WumpusContext;
 import agentcore.WumpusPathPlanner;
 /**
  * The explore strategy is to visit all safe spots. However, if a piece of gold is found, then it is picked
- * up and brought to the nearest chest.
+ * up and brought to the nearest chest. If there are no safe spots left, then the least risky unexplored spot is 
+ * visited as long as its chance of death is at most the risk threshold. 
  * 
  * @author Bas Testerink
  */
 public class WumpusExploreStrategy extends Strategy {
+	private double riskThreshold;			// Highest acceptable chance of death when no safe spot is left, 0 to only visit safe spots
+	
+	public WumpusExploreStrategy(){
+		this(0);
+	}
+	
+	public WumpusExploreStrategy(double riskThreshold){
+		this.riskThreshold = riskThreshold;
+	}
+	
+	public double getRiskThreshold(){ return riskThreshold; }
+	public void setRiskThreshold(double riskThreshold){ this.riskThreshold = riskThreshold; }
 	
 	public boolean isRelevant(Trigger t){
 		return t instanceof ClearWorldGoal;
@@ -48,11 +60,16 @@ public class WumpusExploreStrategy extends Strategy {
 			if(goalLocation != null && !goalLocation.isProcessed(agent.getContext())) return true;
 			WumpusContext context = (WumpusContext) agent.getContext(); 
 			if(goalLocation != null){
-				if(goalLocation.getAtTarget()==WumpusConstants.CHEST){
+				if(!context.isAlive(agent)){						// Usually a risk that was taken and lost
+					context.setExplored(true);
+					context.announceDeath(agent);
+					context.sendSummaries(agent);					// Others still get to hear what is left
+					setFinished(true);
+				} else if(goalLocation.getAtTarget()==WumpusConstants.CHEST){
 					context.drop(agent);
 				} else if(goalLocation.getAtTarget()==WumpusConstants.GOLD){
 					context.grab(agent);
-				} else if(goalLocation.getAtTarget()==WumpusConstants.SAFE){
+				} else if(goalLocation.getAtTarget()==WumpusConstants.SAFE || goalLocation.getAtTarget()==WumpusConstants.RISKY){
 					boolean b = context.foundWumpus();
 					context.perceive(agent);
 					if(!b && context.foundWumpus()) context.announceWumpus(agent); // Just found the Wumpus
@@ -60,23 +77,30 @@ public class WumpusExploreStrategy extends Strategy {
 				}
 				goalLocation = null;
 			} else {
-				Vertex nearestChestSpot = WumpusPathPlanner.nearestSpot(context.getChestSpots()); 
-				Vertex nearestGoldSpot = WumpusPathPlanner.nearestSpot(context.getGoldSpots()); 
-				Vertex nearestSafeSpot = WumpusPathPlanner.nearestSpot(context.getSafeSpots());  
+				GridCell nearestChestSpot = WumpusPathPlanner.nearestSpot(context, context.getChestSpots()); 
+				GridCell nearestGoldSpot = WumpusPathPlanner.nearestSpot(context, context.getGoldSpots()); 
+				GridCell nearestSafeSpot = WumpusPathPlanner.nearestSpot(context, context.getSafeSpots());  
+				GridCell riskySpot = null;
 				if(context.holdsGold() && nearestChestSpot != null){
-					GridCell g = (GridCell)nearestChestSpot;
+					GridCell g = nearestChestSpot;
 					goalLocation = new TraverseGoal(g.getX(), g.getY(), WumpusConstants.CHEST);
 					agent.adoptGoal(goalLocation);
 				} else if(!context.holdsGold() && nearestGoldSpot != null){
-					GridCell g = (GridCell)nearestGoldSpot;
+					GridCell g = nearestGoldSpot;
 					goalLocation = new TraverseGoal(g.getX(), g.getY(), WumpusConstants.GOLD);
 					agent.adoptGoal(goalLocation);
 				} else if(nearestSafeSpot != null){
-					GridCell g = (GridCell)nearestSafeSpot;
+					GridCell g = nearestSafeSpot;
 					goalLocation = new TraverseGoal(g.getX(), g.getY(), WumpusConstants.SAFE);
 					agent.adoptGoal(goalLocation);
+				} else if(riskThreshold > 0 && (riskySpot = context.leastRiskyCell(riskThreshold)) != null){
+					GridCell g = riskySpot;
+					context.venture(g);
+					goalLocation = new TraverseGoal(g.getX(), g.getY(), WumpusConstants.RISKY);
+					agent.adoptGoal(goalLocation);
 				} else { 
 					context.setExplored(true); 
+					context.sendSummaries(agent);
 					setFinished(true);
 				}
 			}
@@ -95,6 +119,8 @@ public class WumpusExploreStrategy extends Strategy {
 					r.append("\"Wait for reaching ("+goalLocation.getX()+","+goalLocation.getY()+") and then grab the gold.\"");
 				} else if(goalLocation.getAtTarget()==WumpusConstants.SAFE){
 					r.append("\"Wait for reaching ("+goalLocation.getX()+","+goalLocation.getY()+") and then perceive the surroundings.\"");
+				} else if(goalLocation.getAtTarget()==WumpusConstants.RISKY){
+					r.append("\"Wait for reaching the unsafe spot ("+goalLocation.getX()+","+goalLocation.getY()+") and then perceive the surroundings.\"");
 				}
 			} else {
 				r.append("\"Try to bring gold to a chest, or obtain gold, or explore an unexplored safe spot.\"");
@@ -2,6 +2,7 @@ package strategies;
 
 import triggers.ClearWorldGoal;
 import triggers.KnowledgeMessage;
+import triggers.KnowledgeSummary;
 import messaging.LocalMessage;
 import agentcore.AgentInstantiation;
 import agentcore.Context;
@@ -12,7 +13,8 @@ import agentcore.Trigger;
 import agentcore.WumpusAgentInstantiation;
 import agentcore.WumpusContext;
 /**
- * The message strategy processes a message in the belief base.
+ * The message strategy processes a message in the belief base. Messages are knowledge about one location or a summary
+ * of safe locations.
  * 
  * @author Bas Testerink
  */
@@ -33,25 +35,47 @@ public class WumpusMessageStrategy extends Strategy {
 		}
 
 		public boolean executeNextStep(AgentInstantiation agent){ 
-			KnowledgeMessage k = (KnowledgeMessage)msg.getContent();
 			WumpusContext context = (WumpusContext) agent.getContext();  
-			if(k.hasWumpus()){ 
-				context.setWumpus(agent, k.getX(), k.getY());
+			if(msg.getContent() instanceof KnowledgeSummary){
+				KnowledgeSummary s = (KnowledgeSummary)msg.getContent();
+				context.addInfo(agent, s);
+				if(s.getAmount() > 0) exploreAgain(agent, context);
 			} else {
-				context.addInfo(agent, k.getX(),k.getY(),k.canHaveWumpus(),k.canHavePit());
-				if(context.isExplored()){
-					context.setExplored(false);
-					((WumpusAgentInstantiation) agent).adoptGoal(new ClearWorldGoal());
-					context.setPursuingClearWorldGoal(false);
-				}
-			} 
+				KnowledgeMessage k = (KnowledgeMessage)msg.getContent();
+				if(k.hasWumpus()){ 
+					context.setWumpus(agent, k.getX(), k.getY());
+				} else if(k.isDeadly()){
+					context.addDeath(agent, k.getX(), k.getY());
+				} else {
+					context.addInfo(agent, k.getX(),k.getY(),k.canHaveWumpus(),k.canHavePit());
+					exploreAgain(agent, context);
+				} 
+			}
 			setFinished(true);
 			return true;
 		}
 
+		/** An agent that explored everything it knew of has new spots to explore, unless it died. */
+		private void exploreAgain(AgentInstantiation agent, WumpusContext context){
+			if(context.isExplored() && context.isAlive(agent)){
+				context.setExplored(false);
+				((WumpusAgentInstantiation) agent).adoptGoal(new ClearWorldGoal());
+				context.setPursuingClearWorldGoal(false);
+			}
+		}
+
 		public ExecutionError getError(){ return null; }
 		
 		public synchronized void toJSON(StringBuffer r){
+			if(msg.getContent() instanceof KnowledgeSummary){
+				r.append('{');
+				r.append("\"Name\": \"handle message instantiation\",");
+				r.append("\"Trigger\": "); ((KnowledgeSummary)msg.getContent()).toJSON(r); r.append(',');
+				r.append("\"Description\" :");
+				r.append("\"Add to the belief state that the summarized positions are safe and where the wumpus is, if it is known. Also make sure that exploring the world is still a goal.\"");
+				r.append('}');
+				return;
+			}
 			KnowledgeMessage k = (KnowledgeMessage)msg.getContent();
 			r.append('{');
 			r.append("\"Name\": \"handle message instantiation\",");
@@ -59,6 +83,8 @@ public class WumpusMessageStrategy extends Strategy {
 			r.append("\"Description\" :");
 			if(k.hasWumpus()){
 				r.append("\"Add to the belief state that the wumpus is at ("+k.getX()+","+k.getY()+").\"");
+			} else if(k.isDeadly()){
+				r.append("\"Add to the belief state that an agent died at ("+k.getX()+","+k.getY()+").\"");
 			} else {
 				r.append("\"Add to the belief state that position ("+k.getX()+","+k.getY()+") is safe. Also make sure that exploring the world is still a goal.\"");
 			}
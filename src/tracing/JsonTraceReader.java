@@ -0,0 +1,103 @@
+package tracing;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+/**
+ * Reads the JSON states that agents write in debug mode without a trace writer (./output/id.json), one line at a time.
+ * Every line holds one state. Only what the TraceRecord has a place for is read: the time, the id, the next actor and
+ * the texts of the goals, events, plans and messages.
+ *
+ * @author Bas Testerink
+ */
+public class JsonTraceReader implements TraceSource {
+	private static final String[] KEYS = new String[TraceRecord.LISTS]; // Keys of the lists, in the order in which they are written
+	static {
+		KEYS[TraceRecord.GOALS] = "\"Goals\": [";
+		KEYS[TraceRecord.EXTERNAL_EVENTS] = "\"ExternalEvents\": [";
+		KEYS[TraceRecord.INTERNAL_EVENTS] = "\"InternalEvents\": [";
+		KEYS[TraceRecord.PLANS] = "\"Plans\": [";
+		KEYS[TraceRecord.MESSAGES] = "\"Messages\": [";
+	}
+	private BufferedReader in;
+	private String[] elements = new String[16];					// Reused to split lists
+	private int amount;											// Number of elements found by the last split
+
+	public JsonTraceReader(String file) throws IOException {
+		in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), 1<<16);
+	}
+
+	public boolean next(TraceRecord r) throws IOException {
+		String line;
+		do{
+			line = in.readLine();
+			if(line == null) return false;
+		} while(line.indexOf("\"Time\": ") < 0);						// Skip empty lines
+		r.time = Long.parseLong(number(line, "\"Time\": "));
+		r.agent = Integer.parseInt(number(line, "\"ID\": "));
+		String next = number(line, "\"NextActor\": ");
+		r.nextActor = next.isEmpty() ? -1 : Integer.parseInt(next);		// Empty if it is null
+		int from = 0;
+		for(int l = 0; l < TraceRecord.LISTS; l++){
+			int start = line.indexOf(KEYS[l], from);
+			if(start < 0){
+				r.lists[l] = new String[0];
+				continue;
+			}
+			from = split(line, start+KEYS[l].length());
+			r.lists[l] = new String[amount];
+			System.arraycopy(elements, 0, r.lists[l], 0, amount);
+		}
+		r.x = r.y = r.wumpusX = r.wumpusY = -1;
+		r.dropped = 0;
+		r.clearChanges();
+		return true;
+	}
+
+	/**
+	 * Split the elements of a JSON list at the top level.
+	 * @param line The text.
+	 * @param from The index after the opening bracket.
+	 * @return The index after the closing bracket.
+	 */
+	private int split(String line, int from){
+		amount = 0;
+		int depth = 0, start = from;
+		boolean quoted = false;
+		for(int i = from; i < line.length(); i++){
+			char c = line.charAt(i);
+			if(quoted){
+				if(c == '\\') i++;
+				else if(c == '"') quoted = false;
+			} else if(c == '"') quoted = true;
+			else if(c == '{' || c == '[') depth++;
+			else if((c == ',' || c == ']') && depth == 0){
+				if(i > start) add(line.substring(start, i).trim());
+				if(c == ']') return i+1;
+				start = i+1;
+			} else if(c == '}' || c == ']') depth--;
+		}
+		return line.length();
+	}
+
+	private void add(String element){
+		if(amount == elements.length){
+			String[] e = new String[amount*2];
+			System.arraycopy(elements, 0, e, 0, amount);
+			elements = e;
+		}
+		elements[amount++] = element;
+	}
+
+	/** The digits after a key, empty if there are none. */
+	private static String number(String line, String key){
+		int i = line.indexOf(key);
+		if(i < 0) return "";
+		int start = i+key.length(), end = start;
+		while(end < line.length() && (Character.isDigit(line.charAt(end)) || line.charAt(end) == '-')) end++;
+		return line.substring(start, end);
+	}
+
+	public void close() throws IOException { in.close(); }
+}
@@ -0,0 +1,48 @@
+package tracing;
+/**
+ * Distribution of durations in nanoseconds, in a fixed amount of memory. Durations below 16 ns are counted exactly.
+ * Larger durations are counted in buckets: every power of two is split into 16 buckets, so a reported percentile is at
+ * most 1/16th below the actual duration.
+ *
+ * @author Bas Testerink
+ */
+public class LatencyHistogram {
+	private static final int SUB = 4, SUBS = 1<<SUB;			// Buckets per power of two
+	private long[] counts = new long[(64-SUB+1)*SUBS];
+	private long amount, total, max;
+
+	public void add(long duration){
+		if(duration < 0) duration = 0;
+		counts[bucket(duration)]++;
+		amount++;
+		total += duration;
+		max = Math.max(max, duration);
+	}
+
+	/** The lowest duration of the bucket that holds a fraction of the durations, e.g. 0.99 for the 99th percentile. */
+	public long percentile(double fraction){
+		long rank = (long)Math.ceil(fraction*amount), seen = 0;
+		for(int i = 0; i < counts.length; i++){
+			seen += counts[i];
+			if(seen >= rank && seen > 0) return lowest(i);
+		}
+		return 0;
+	}
+
+	public long getAmount(){ return amount; }
+	public long getTotal(){ return total; }
+	public long getMax(){ return max; }
+	public double getMean(){ return amount == 0 ? 0 : total/(double)amount; }
+
+	private static int bucket(long d){
+		if(d < SUBS) return (int)d;
+		int exponent = 63-Long.numberOfLeadingZeros(d);				// d is in [2^exponent, 2^(exponent+1))
+		return (exponent-SUB+1)*SUBS+(int)((d>>>(exponent-SUB)) & (SUBS-1));
+	}
+
+	private static long lowest(int bucket){
+		if(bucket < SUBS) return bucket;
+		int exponent = bucket/SUBS+SUB-1;
+		return (1L<<exponent)|((long)(bucket%SUBS)<<(exponent-SUB));
+	}
+}
@@ -0,0 +1,193 @@
+package tracing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import agentplatform.PlatformNode;
+/**
+ * Reports where the deliberation cycle of agents spends its time, from their traces. Usage:
+ *
+ * java tracing.TraceAnalyzer [-interval ms] [file or directory ...]
+ *
+ * Directories (./output/ by default) are searched for binary traces (agent-part.trace) and JSON states (agent.json).
+ * Files are read one record at a time, so their size does not matter. The parts of a binary trace are read in order
+ * as one timeline. The time between two records of an agent is the time that the actor that was named as the next
+ * actor in the first record took to serve the agent, including the time that the agent waited for it. Intervals in
+ * which records were dropped are left out. Reported are:
+ * <ul>
+ * <li>per agent the number of steps, the time between its first and last record and the number of dropped records;</li>
+ * <li>per actor the distribution of its durations;</li>
+ * <li>per strategy the time of the plan executor, divided evenly over the plans that it had to execute;</li>
+ * <li>per interval of time the mean and maximum number of goals and plans of the agents.</li>
+ * </ul>
+ *
+ * @author Bas Testerink
+ */
+public class TraceAnalyzer {
+	private static final String[] ACTORS = new String[5];			// Names of the actors, indexed by their PlatformNode constant
+	static {
+		ACTORS[PlatformNode.GOAL_ACHIEVER] = "GOAL_ACHIEVER";
+		ACTORS[PlatformNode.EXTERNAL_EVENT_HANDLER] = "EXTERNAL_EVENT_HANDLER";
+		ACTORS[PlatformNode.MESSAGE_HANDLER] = "MESSAGE_HANDLER";
+		ACTORS[PlatformNode.PLAN_EXECUTOR] = "PLAN_EXECUTOR";
+		ACTORS[PlatformNode.REPAIRER] = "REPAIRER";
+	}
+	private long interval = 1000000000L;							// Length of the intervals for the queue depths in ns
+	private LatencyHistogram[] actors = new LatencyHistogram[ACTORS.length]; // Durations per actor
+	private Map<String, long[]> strategies = new TreeMap<String, long[]>(); // Per strategy name the time in ns and the number of executions
+	private TreeMap<Long, long[]> depths = new TreeMap<Long, long[]>(); // Per interval the records, total goals, most goals, total plans, most plans
+	private List<String> timelines = new ArrayList<String>();		// Summary per agent
+	private long skipped = 0;										// Intervals that are left out
+
+	public TraceAnalyzer(){
+		for(int i = 0; i < actors.length; i++) actors[i] = new LatencyHistogram();
+	}
+
+	public static void main(String[] args) throws IOException {
+		TraceAnalyzer analyzer = new TraceAnalyzer();
+		List<File> files = new ArrayList<File>();
+		for(int i = 0; i < args.length; i++){
+			if(args[i].equals("-interval")) analyzer.interval = Long.parseLong(args[++i])*1000000L;
+			else files.add(new File(args[i]));
+		}
+		if(files.isEmpty()) files.add(new File("./output/"));
+		Map<String, List<File>> traces = new TreeMap<String, List<File>>();	// Files per timeline
+		for(File f : files){
+			if(f.isDirectory()){
+				File[] contents = f.listFiles();
+				if(contents != null) for(File c : contents) addTrace(traces, c);
+			} else addTrace(traces, f);
+		}
+		for(Map.Entry<String, List<File>> e : traces.entrySet()) analyzer.analyze(e.getKey(), e.getValue());
+		analyzer.print();
+	}
+
+	/** Add a file to the timeline that it belongs to. Files that are not traces are ignored. */
+	private static void addTrace(Map<String, List<File>> traces, File f){
+		String name = f.getName();
+		String timeline;
+		if(name.matches("\\d+-\\d+\\.trace")) timeline = "agent "+name.substring(0, name.indexOf('-'))+" (trace)";
+		else if(name.matches("\\d+\\.json")) timeline = "agent "+name.substring(0, name.indexOf('.'))+" (json)";
+		else return;
+		timeline = (f.getParent() == null ? "." : f.getParent())+": "+timeline;
+		List<File> parts = traces.get(timeline);
+		if(parts == null){
+			parts = new ArrayList<File>();
+			traces.put(timeline, parts);
+		}
+		int i = parts.size();												// Keep the parts in order
+		while(i > 0 && part(parts.get(i-1)) > part(f)) i--;
+		parts.add(i, f);
+	}
+
+	/** The part number of a binary trace, 0 for JSON files. */
+	private static int part(File f){
+		String name = f.getName();
+		if(!name.endsWith(".trace")) return 0;
+		return Integer.parseInt(name.substring(name.indexOf('-')+1, name.length()-".trace".length()));
+	}
+
+	/** Read the timeline of one agent. */
+	public void analyze(String timeline, List<File> files) throws IOException {
+		TraceRecord r = new TraceRecord(-1, 0), previous = new TraceRecord(-1, 0);
+		long steps = 0, dropped = 0, start = 0;
+		for(File f : files){
+			TraceSource source = f.getName().endsWith(".trace") ? new TraceReader(f.getPath()) : new JsonTraceReader(f.getPath());
+			try{
+				while(source.next(r)){
+					if(steps == 0) start = r.time;
+					else if(r.dropped == 0) attribute(previous, r.time-previous.time);
+					else skipped++;
+					steps++;
+					dropped += r.dropped;
+					addDepths(r);
+					TraceRecord t = previous;								// Keep the record, reuse the older one
+					previous = r;
+					r = t;
+				}
+			} finally { source.close(); }
+		}
+		double span = steps == 0 ? 0 : (previous.time-start)/1000000.0;
+		timelines.add(String.format("%s: %d steps over %.1f ms (%.0f steps/s), %d dropped", timeline, steps, span,
+				span > 0 ? steps/span*1000 : 0.0, dropped));
+	}
+
+	/** Count the time between two records for the actor that served the agent in between. */
+	private void attribute(TraceRecord r, long duration){
+		if(r.nextActor < 0 || r.nextActor >= actors.length){
+			skipped++;
+			return;
+		}
+		actors[r.nextActor].add(duration);
+		String[] plans = r.lists[TraceRecord.PLANS];
+		if(r.nextActor == PlatformNode.PLAN_EXECUTOR && plans != null && plans.length > 0)
+			for(String plan : plans){
+				String name = name(plan);
+				long[] s = strategies.get(name);
+				if(s == null){
+					s = new long[2];
+					strategies.put(name, s);
+				}
+				s[0] += duration/plans.length;
+				s[1]++;
+			}
+	}
+
+	private void addDepths(TraceRecord r){
+		Long key = r.time/interval;
+		long[] d = depths.get(key);
+		if(d == null){
+			d = new long[5];
+			depths.put(key, d);
+		}
+		int goals = length(r.lists[TraceRecord.GOALS]), plans = length(r.lists[TraceRecord.PLANS]);
+		d[0]++;
+		d[1] += goals;
+		d[2] = Math.max(d[2], goals);
+		d[3] += plans;
+		d[4] = Math.max(d[4], plans);
+	}
+
+	/** Print the report to the standard output. */
+	public void print(){
+		System.out.println("Timelines: "+timelines.size()+", left out intervals: "+skipped);
+		for(String t : timelines) System.out.println(t);
+		System.out.println();
+		System.out.println(String.format("%-24s %10s %10s %10s %10s %10s %10s", "Actor (us)", "amount", "mean", "p50", "p90", "p99", "max"));
+		for(int i = 0; i < actors.length; i++){
+			LatencyHistogram h = actors[i];
+			System.out.println(String.format("%-24s %10d %10.1f %10.1f %10.1f %10.1f %10.1f", ACTORS[i], h.getAmount(), h.getMean()/1000,
+					h.percentile(0.5)/1000.0, h.percentile(0.9)/1000.0, h.percentile(0.99)/1000.0, h.getMax()/1000.0));
+		}
+		System.out.println();
+		long executor = Math.max(1, actors[PlatformNode.PLAN_EXECUTOR].getTotal());
+		System.out.println(String.format("%-40s %12s %8s %12s", "Strategy", "time (ms)", "share", "executions"));
+		for(Map.Entry<String, long[]> e : strategies.entrySet())
+			System.out.println(String.format("%-40s %12.1f %7.1f%% %12d", e.getKey(), e.getValue()[0]/1000000.0,
+					100.0*e.getValue()[0]/executor, e.getValue()[1]));
+		System.out.println();
+		System.out.println(String.format("%-12s %10s %10s %10s %10s %10s", "Time (s)", "records", "goals", "max goals", "plans", "max plans"));
+		if(!depths.isEmpty()){
+			long first = depths.firstKey();
+			for(Map.Entry<Long, long[]> e : depths.entrySet()){
+				long[] d = e.getValue();
+				System.out.println(String.format("%-12.1f %10d %10.2f %10d %10.2f %10d", (e.getKey()-first)*interval/1e9, d[0],
+						d[1]/(double)d[0], d[2], d[3]/(double)d[0], d[4]));
+			}
+		}
+	}
+
+	/** The name of a goal, event or plan: the value of its first key if that is "Name". */
+	private static String name(String json){
+		String key = "{\"Name\": \"";
+		if(!json.startsWith(key)) return "(unnamed)";
+		int end = json.indexOf('"', key.length());
+		return end < 0 ? "(unnamed)" : json.substring(key.length(), end);
+	}
+
+	private static int length(String[] list){ return list == null ? 0 : list.length; }
+}
@@ -0,0 +1,90 @@
+package tracing;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+/**
+ * Reads one part of a binary trace, as written by the TraceWriter, one record at a time.
+ *
+ * @author Bas Testerink
+ */
+public class TraceReader implements TraceSource {
+	private DataInputStream in;
+	private int agent, width, height;							// From the header
+	private long time = 0;										// Time of the previous step
+	private List<String> strings = new ArrayList<String>();		// String table of the part
+
+	public TraceReader(String file) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1<<16));
+		if(in.readInt() != TraceWriter.MAGIC) throw new IOException(file+" is not a trace");
+		int version = in.readUnsignedByte();
+		if(version != TraceWriter.VERSION) throw new IOException(file+" has unknown version "+version);
+		agent = readVarInt(in);
+		width = readVarInt(in);
+		height = readVarInt(in);
+	}
+
+	/** Read the next step. A step that was cut off, because the program stopped while writing it, ends the part. */
+	public boolean next(TraceRecord r) throws IOException {
+		try{
+			while(true){
+				int type = in.read();
+				if(type < 0) return false;
+				if(type == TraceWriter.STRING){
+					byte[] bytes = new byte[readVarInt(in)];
+					in.readFully(bytes);
+					strings.add(new String(bytes, "UTF-8"));
+				} else if(type == TraceWriter.STEP){
+					readStep(r);
+					return true;
+				} else throw new IOException("unknown record type "+type);
+			}
+		} catch(EOFException e){ return false; }
+	}
+
+	private void readStep(TraceRecord r) throws IOException {
+		long z = readVarLong(in);
+		time += (z>>>1)^-(z&1);										// Undo the zigzag encoding
+		r.time = time;
+		r.agent = agent;
+		r.width = width;
+		r.height = height;
+		r.nextActor = readVarInt(in)-1;
+		r.x = readVarInt(in);
+		r.y = readVarInt(in);
+		int flags = in.readUnsignedByte();
+		r.holdsGold = (flags&TraceWriter.HOLDS_GOLD) != 0;
+		if((flags&TraceWriter.FOUND_WUMPUS) != 0){
+			r.wumpusX = readVarInt(in);
+			r.wumpusY = readVarInt(in);
+		} else r.wumpusX = r.wumpusY = -1;
+		r.dropped = readVarInt(in);
+		for(int l = 0; l < TraceRecord.LISTS; l++){
+			String[] list = new String[readVarInt(in)];
+			for(int i = 0; i < list.length; i++) list[i] = strings.get(readVarInt(in));
+			r.lists[l] = list;
+		}
+		r.clearChanges();
+		for(int i = readVarInt(in); i > 0; i--) r.addChange(readVarInt(in), readVarInt(in));
+	}
+
+	public void close() throws IOException { in.close(); }
+	public int getAgent(){ return agent; }
+	public int getWidth(){ return width; }
+	public int getHeight(){ return height; }
+
+	public static int readVarInt(DataInputStream in) throws IOException { return (int)readVarLong(in); }
+
+	public static long readVarLong(DataInputStream in) throws IOException {
+		long r = 0;
+		for(int shift = 0; ; shift += 7){
+			int b = in.readUnsignedByte();
+			r |= (long)(b & 0x7F)<<shift;
+			if((b & 0x80) == 0) return r;
+		}
+	}
+}
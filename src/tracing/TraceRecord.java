@@ -0,0 +1,47 @@
+package tracing;
+
+import java.util.Arrays;
+/**
+ * The state of an agent after one step of its deliberation cycle, as it is handed to a TraceWriter. The agent fills
+ * the record on its own thread with what is cheap to copy: numbers, the texts of its goals, events, plans and messages
+ * and the beliefs of the cells that changed since its previous record. Everything else happens on the writer's thread.
+ *
+ * @author Bas Testerink
+ */
+public class TraceRecord {
+	public static final int GOALS = 0, EXTERNAL_EVENTS = 1, INTERNAL_EVENTS = 2, PLANS = 3, MESSAGES = 4; // The lists of triggers and plans
+	public static final int LISTS = 5;
+	public long time;											// System.nanoTime() of the step
+	public int agent, nextActor = -1;							// Agent id and the actor that serves it next (-1 if none)
+	public int width, height;									// Dimensions of the world
+	public int x, y;											// Position of the agent
+	public boolean holdsGold;									// Whether the agent holds gold
+	public int wumpusX = -1, wumpusY = -1;						// Location of the wumpus if the agent found it
+	public String[][] lists = new String[LISTS][];				// Texts of the goals, events, plans and messages
+	public int dropped;											// Records of any agent that were dropped before this one
+	private int[] changed = new int[16];						// Changed cells (x*height+y) and their beliefs, in pairs
+	private int changedAmount;									// Number of changed cells
+
+	public TraceRecord(int agent, long time){
+		this.agent = agent;
+		this.time = time;
+	}
+
+	/**
+	 * Add a changed cell.
+	 * @param cell The cell as x*height+y.
+	 * @param beliefs The beliefs about the cell, bit p is set if the cell is set in plane p of the BeliefPlanes.
+	 */
+	public void addChange(int cell, int beliefs){
+		if(changedAmount*2 == changed.length) changed = Arrays.copyOf(changed, changed.length*2);
+		changed[changedAmount*2] = cell;
+		changed[changedAmount*2+1] = beliefs;
+		changedAmount++;
+	}
+
+	/** Remove the changed cells, so the record can be reused. */
+	public void clearChanges(){ changedAmount = 0; }
+	public int getChangedAmount(){ return changedAmount; }
+	public int getChangedCell(int i){ return changed[i*2]; }
+	public int getChangedBeliefs(int i){ return changed[i*2+1]; }
+}
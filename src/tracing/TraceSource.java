@@ -0,0 +1,17 @@
+package tracing;
+
+import java.io.IOException;
+/**
+ * A stream of trace records of one agent, in the order in which they were written.
+ *
+ * @author Bas Testerink
+ */
+public interface TraceSource {
+	/**
+	 * Read the next record.
+	 * @param r The record to fill, its previous contents are overwritten.
+	 * @return False if there are no more records.
+	 */
+	public boolean next(TraceRecord r) throws IOException;
+	public void close() throws IOException;
+}
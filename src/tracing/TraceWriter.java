@@ -0,0 +1,216 @@
+package tracing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+/**
+ * Writes the trace records of agents to binary files on its own thread. Agents offer records to a bounded ring buffer
+ * and continue immediately. If the buffer is full, then the record is dropped and counted, such that a slow disk never
+ * slows down the agents. The number of dropped records is stored in the next record that is written.
+ *
+ * Every agent has its own files, named agent-part.trace (e.g. 0-0.trace). If a file grows beyond the maximum size, then
+ * the next part is started, and the oldest part is deleted if there are more parts than the maximum number of files.
+ * Each part can be read on its own. A part consists of:
+ * <ul>
+ * <li>A header: the int MAGIC, a byte VERSION, and the agent id, the world width and the world height as varints.</li>
+ * <li>Records, each starting with a byte type:
+ * <ul>
+ * <li>STRING defines the next string of the part's string table (ids start at 0): the varint length of its UTF-8
+ *     encoding followed by the bytes. The texts of goals, events, plans and messages repeat a lot, so a step refers to
+ *     them by id.</li>
+ * <li>STEP: the time difference with the previous step of the part (the first is relative to 0), the next actor + 1,
+ *     x, y, flags (HOLDS_GOLD, FOUND_WUMPUS), the wumpus x and y if it was found, the number of dropped records, for
+ *     each of the TraceRecord lists the number of texts and their string ids, the number of changed cells and per cell
+ *     the cell (x*height+y) and its beliefs.</li>
+ * </ul></li>
+ * </ul>
+ * Numbers are unsigned varints (7 bits per byte, least significant first, high bit set if more bytes follow), except
+ * the time difference, which is zigzag encoded first. The flags are a single byte. Beliefs of cells that have not
+ * changed since the start of the part are unknown to a reader, the agents start with only CAN_HAVE_PIT and
+ * CAN_HAVE_WUMPUS set.
+ *
+ * @author Bas Testerink
+ */
+public class TraceWriter implements Runnable {
+	public static final int MAGIC = 0x57545243, VERSION = 1;		// "WTRC"
+	public static final int STRING = 1, STEP = 2;					// Record types
+	public static final int HOLDS_GOLD = 1, FOUND_WUMPUS = 2;		// Flags of a step
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private String directory;										// Directory of the trace files
+	private long maxFileSize;										// Bytes after which a new part is started
+	private int maxFiles;											// Parts that are kept per agent
+	private TraceRecord[] ring;										// Records that wait to be written
+	private int head, amount;										// Index of the oldest record, number of waiting records
+	private int dropped;											// Records dropped since the last accepted record
+	private boolean closed = false;									// Whether no more records are accepted
+	private Thread thread = null;									// Thread that writes
+	private Map<Integer, TraceFile> files = new HashMap<Integer, TraceFile>(); // Current part per agent, only used by the writing thread
+
+	/**
+	 * Create a writer. Call {@link #start()} to start writing.
+	 * @param directory The directory to write to, such as "./output/".
+	 * @param capacity Number of records that can wait to be written.
+	 * @param maxFileSize Size in bytes after which a new file is started.
+	 * @param maxFiles Number of files that are kept per agent.
+	 */
+	public TraceWriter(String directory, int capacity, long maxFileSize, int maxFiles){
+		this.directory = directory.endsWith("/") ? directory : directory+"/";
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+		ring = new TraceRecord[capacity];
+	}
+
+	/** Start the thread that writes the records. */
+	public synchronized void start(){
+		if(thread != null) return;
+		thread = new Thread(this, "trace writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Offer a record to be written.
+	 * @param record The record, which should not be modified afterwards.
+	 * @return False if the record was dropped because the buffer is full or the writer is closed.
+	 */
+	public synchronized boolean offer(TraceRecord record){
+		if(closed || amount == ring.length){
+			dropped++;
+			return false;
+		}
+		record.dropped = dropped;
+		dropped = 0;
+		ring[(head+amount)%ring.length] = record;
+		if(amount++ == 0) notifyAll();
+		return true;
+	}
+
+	/** Stop accepting records, write the waiting records and close the files. */
+	public void close(){
+		Thread t;
+		synchronized(this){
+			closed = true;
+			notifyAll();
+			t = thread;
+		}
+		try{
+			if(t != null) t.join();
+			else closeFiles();
+		} catch(InterruptedException e){ Thread.currentThread().interrupt(); }
+	}
+
+	public void run(){
+		try{
+			while(true){
+				TraceRecord record;
+				boolean last;
+				synchronized(this){
+					while(amount == 0 && !closed) wait();
+					if(amount == 0) break;							// Closed and everything is written
+					record = ring[head];
+					ring[head] = null;
+					head = (head+1)%ring.length;
+					last = --amount == 0;
+				}
+				write(record);
+				if(last) for(TraceFile f : files.values()) f.out.flush(); // Flush when there is nothing to wait for
+			}
+		} catch(Exception e){ e.printStackTrace(); }
+		closeFiles();
+	}
+
+	/** Encode a record to the current part of its agent. */
+	private void write(TraceRecord r) throws IOException {
+		TraceFile f = files.get(r.agent);
+		if(f == null || f.out.size() >= maxFileSize){
+			int part = f == null ? 0 : f.part+1;
+			if(f != null) f.out.close();
+			f = new TraceFile(r, part);
+			files.put(r.agent, f);
+			if(part >= maxFiles) new File(fileName(r.agent, part-maxFiles)).delete(); // Delete the oldest part
+		}
+		for(String[] list : r.lists)									// Define the new strings before the step
+			if(list != null) for(String s : list) f.id(s);
+		DataOutputStream out = f.out;
+		out.writeByte(STEP);
+		writeVarLong(out, zigzag(r.time-f.lastTime));
+		f.lastTime = r.time;
+		writeVarInt(out, r.nextActor+1);
+		writeVarInt(out, r.x);
+		writeVarInt(out, r.y);
+		out.writeByte((r.holdsGold ? HOLDS_GOLD : 0) | (r.wumpusX >= 0 ? FOUND_WUMPUS : 0));
+		if(r.wumpusX >= 0){
+			writeVarInt(out, r.wumpusX);
+			writeVarInt(out, r.wumpusY);
+		}
+		writeVarInt(out, r.dropped);
+		for(String[] list : r.lists){
+			writeVarInt(out, list == null ? 0 : list.length);
+			if(list != null) for(String s : list) writeVarInt(out, f.id(s));
+		}
+		writeVarInt(out, r.getChangedAmount());
+		for(int i = 0; i < r.getChangedAmount(); i++){
+			writeVarInt(out, r.getChangedCell(i));
+			writeVarInt(out, r.getChangedBeliefs(i));
+		}
+	}
+
+	private void closeFiles(){
+		for(TraceFile f : files.values()){
+			try{ f.out.close(); } catch(IOException e){ e.printStackTrace(); }
+		}
+		files.clear();
+	}
+
+	private String fileName(int agent, int part){ return directory+agent+"-"+part+".trace"; }
+
+	private static long zigzag(long n){ return (n<<1)^(n>>63); }
+
+	public static void writeVarInt(DataOutputStream out, int n) throws IOException { writeVarLong(out, n & 0xFFFFFFFFL); }
+
+	public static void writeVarLong(DataOutputStream out, long n) throws IOException {
+		while((n & ~0x7FL) != 0){
+			out.writeByte((int)(n & 0x7F) | 0x80);
+			n >>>= 7;
+		}
+		out.writeByte((int)n);
+	}
+
+	/** The current part of the trace of one agent and its string table. */
+	private class TraceFile {
+		private DataOutputStream out;
+		private int part;
+		private long lastTime = 0;
+		private Map<String, Integer> strings = new HashMap<String, Integer>();
+
+		private TraceFile(TraceRecord r, int part) throws IOException {
+			this.part = part;
+			new File(directory).mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName(r.agent, part)), 1<<16));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			writeVarInt(out, r.agent);
+			writeVarInt(out, r.width);
+			writeVarInt(out, r.height);
+		}
+
+		/** The id of a string, which is defined in the file if it is new. */
+		private int id(String s) throws IOException {
+			Integer id = strings.get(s);
+			if(id == null){
+				id = strings.size();
+				strings.put(s, id);
+				byte[] bytes = s.getBytes(UTF8);
+				out.writeByte(STRING);
+				writeVarInt(out, bytes.length);
+				out.write(bytes);
+			}
+			return id;
+		}
+	}
+}
@@ -2,13 +2,14 @@ package triggers;
 
 import messaging.LocalMessage;
 /**
- * This message informs other agents whether a location is certainly safe or has the wumpus. 
+ * This message informs other agents whether a location is certainly safe or has the wumpus, or that an agent died
+ * there, in which case it has a pit or the wumpus.
  * 
  * @author Bas Testerink
  */
 public class KnowledgeMessage extends LocalMessage {
 	private int x, y;
-	private boolean hasWumpus, canHaveWumpus, canHavePit;
+	private boolean hasWumpus, canHaveWumpus, canHavePit, deadly;
 	
 	public KnowledgeMessage(int x, int y, boolean hasWumpus, boolean canHaveWumpus, boolean canHavePit){
 		this.x = x;
@@ -18,18 +19,26 @@ public class KnowledgeMessage extends LocalMessage {
 		this.canHavePit = canHavePit;
 	}
 	
+	/** A message about a location where an agent died. */
+	public KnowledgeMessage(int x, int y){
+		this(x, y, false, true, true);
+		deadly = true;
+	}
+	
 	public int getX(){ return x; }
 	public int getY(){ return y; }
 	public boolean hasWumpus(){ return hasWumpus; }
 	public boolean canHaveWumpus(){ return canHaveWumpus; } 
 	public boolean canHavePit(){ return canHavePit; }
+	public boolean isDeadly(){ return deadly; }
 	
 	public void toJSON(StringBuffer r){
 		r.append('{');
 		r.append("\"Location\": \"("+x+","+y+")\",");
 		r.append("\"HasWumpus\": \""+hasWumpus+"\",");
 		r.append("\"CanHaveWumpus\": \""+canHaveWumpus+"\",");
-		r.append("\"CanHavePit\": \""+canHavePit+"\"");
+		r.append("\"CanHavePit\": \""+canHavePit+"\",");
+		r.append("\"Deadly\": \""+deadly+"\"");
 		r.append('}'); 
 	} 
 }
@@ -0,0 +1,40 @@
+package triggers;
+
+import messaging.LocalMessage;
+/**
+ * This message informs another agent of a number of locations that are certainly safe at once, and possibly of the 
+ * location of the wumpus. Agents collect the locations that they visited outside of the region of interest of another 
+ * agent and send them in one summary. Receivers also merge the knowledge messages that wait for them into one summary.
+ * 
+ * @author Bas Testerink
+ */
+public class KnowledgeSummary extends LocalMessage {
+	private int[] cells;				// The safe locations as (x,y) pairs
+	private int wumpusX = -1, wumpusY;	// Location of the wumpus, x is -1 if it is not part of the summary
+	
+	public KnowledgeSummary(int[] cells){
+		this.cells = cells;
+	}
+	
+	public KnowledgeSummary(int[] cells, int wumpusX, int wumpusY){
+		this(cells);
+		this.wumpusX = wumpusX;
+		this.wumpusY = wumpusY;
+	}
+	
+	public int getAmount(){ return cells.length/2; }
+	public int getX(int i){ return cells[i*2]; }
+	public int getY(int i){ return cells[i*2+1]; }
+	public boolean hasWumpus(){ return wumpusX >= 0; }
+	public int getWumpusX(){ return wumpusX; }
+	public int getWumpusY(){ return wumpusY; }
+	
+	public void toJSON(StringBuffer r){
+		r.append('{');
+		r.append("\"Safe\": \"");
+		for(int i = 0; i < getAmount(); i++) r.append("("+getX(i)+","+getY(i)+")");
+		r.append('"');
+		if(hasWumpus()) r.append(",\"Wumpus\": \"("+wumpusX+","+wumpusY+")\"");
+		r.append('}'); 
+	} 
+}
@@ -10,7 +10,7 @@ import agentcore.WumpusContext;
  * @author Bas Testerink
  */
 public class TraverseGoal implements Trigger {
-	private int x, y, atTarget; // Target is WumpusConstants.CHEST GOLD SAFE
+	private int x, y, atTarget; // Target is WumpusConstants.CHEST GOLD SAFE RISKY
 	
 	public TraverseGoal(int x, int y, int atTarget){
 		this.x = x;